@@ -30,6 +30,15 @@ android {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
     }
+    // Testes na JVM: chamadas a android.util.Log (ex.: LocalRepository) devolvem 0 em vez de falhar
+    testOptions {
+        unitTests.isReturnDefaultValues = true
+    }
+}
+
+// Microbenchmarks (*BenchmarkTest) fora do ./gradlew test normal; correm com ./gradlew test -Pbenchmarks
+tasks.withType<Test>().configureEach {
+    if (!project.hasProperty("benchmarks")) exclude("**/*BenchmarkTest.class")
 }
 
 dependencies {
@@ -48,6 +57,7 @@ dependencies {
     implementation(libs.firebase.database)
     implementation(libs.firebase.storage)
     testImplementation(libs.junit)
+    testImplementation("org.json:json:20240303")
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
 }
\ No newline at end of file
@@ -0,0 +1,94 @@
+package pt.ubi.pdm.projetofinal;
+
+import android.app.Activity;
+import android.util.Log;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.lifecycle.ActivityLifecycleMonitorRegistry;
+import androidx.test.runner.lifecycle.Stage;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static androidx.test.espresso.Espresso.onView;
+import static androidx.test.espresso.action.ViewActions.click;
+import static androidx.test.espresso.matcher.ViewMatchers.isDisplayed;
+import static androidx.test.espresso.matcher.ViewMatchers.withId;
+import static org.hamcrest.Matchers.allOf;
+import static org.junit.Assert.*;
+
+/**
+ * Tempo de troca de separador na barra de navegação (do toque até a Activity do separador
+ * estar RESUMED). A primeira ida a cada separador cria a Activity; as seguintes devem só
+ * trazê-la para a frente. Regista no logcat (tag TabSwitchTiming) a primeira vs. a mediana
+ * das restantes; não falha por tempos, só confirma que o separador volta a ser a mesma instância.
+ * Usa início ↔ exercícios, que não precisam de sessão iniciada.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TabSwitchTimingTest {
+
+    private static final String TAG = "TabSwitchTiming";
+    private static final int ROUNDS = 10;
+    private static final long TIMEOUT_MS = 5_000;
+
+    @Test
+    public void homeExercises_switchTimes() {
+        try (ActivityScenario<MainActivity> ignored = ActivityScenario.launch(MainActivity.class)) {
+            List<Long> toExercises = new ArrayList<>();
+            List<Long> toHome = new ArrayList<>();
+            Activity firstExercises = null;
+
+            for (int i = 0; i < ROUNDS; i++) {
+                toExercises.add(switchTo(R.id.nav_exercises, ExercisesActivity.class));
+                Activity ex = resumed(ExercisesActivity.class);
+                if (firstExercises == null) firstExercises = ex;
+                else assertSame(firstExercises, ex);
+
+                toHome.add(switchTo(R.id.nav_home, MainActivity.class));
+            }
+
+            Log.i(TAG, String.format(Locale.ROOT, "Separador exercícios: 1.ª %.1f ms | mediana %.1f ms",
+                    toExercises.get(0) / 1e6, median(toExercises.subList(1, ROUNDS)) / 1e6));
+            Log.i(TAG, String.format(Locale.ROOT, "Separador início: 1.ª %.1f ms | mediana %.1f ms",
+                    toHome.get(0) / 1e6, median(toHome.subList(1, ROUNDS)) / 1e6));
+        }
+    }
+
+    // Toca no item e espera que a Activity do separador fique RESUMED. Devolve ns.
+    private static long switchTo(int navItemId, Class<? extends Activity> target) {
+        long t0 = System.nanoTime();
+        onView(allOf(withId(navItemId), isDisplayed())).perform(click());
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (resumed(target) == null) {
+            assertTrue("separador não abriu: " + target.getSimpleName(),
+                    System.currentTimeMillis() < deadline);
+            InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        }
+        return System.nanoTime() - t0;
+    }
+
+    private static Activity resumed(Class<? extends Activity> type) {
+        Activity[] found = new Activity[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            Collection<Activity> list =
+                    ActivityLifecycleMonitorRegistry.getInstance().getActivitiesInStage(Stage.RESUMED);
+            for (Activity a : list) if (type.isInstance(a)) found[0] = a;
+        });
+        return found[0];
+    }
+
+    private static double median(List<Long> values) {
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        int n = sorted.size();
+        return n % 2 == 1 ? sorted.get(n / 2) : (sorted.get(n / 2 - 1) + sorted.get(n / 2)) / 2.0;
+    }
+}
@@ -1,13 +1,20 @@
 package pt.ubi.pdm.projetofinal;
 
 import android.app.Application;
+import android.content.pm.ApplicationInfo;
+import android.os.StrictMode;
 import com.google.firebase.database.FirebaseDatabase;
 
 public class App extends Application {
 
+    // Listeners e referências do RTDB partilhados pelos ecrãs
+    private DataHub hub;
+
     @Override
     public void onCreate() {
         super.onCreate();
+        enableStrictModeInDebug();
+
         // Ativa a persistência offline do Firebase Realtime Database
         try {
             // Permite que os dados do Firebase sejam armazenados localmente e sincronizados quando houver ligação
@@ -16,7 +23,33 @@ public class App extends Application {
             // Caso a persistência já tenha sido ativada anteriormente (o que causaria exceção), ignora o erro
         }
 
+        // Depois da persistência: o DataHub já cria referências (".info/connected")
+        hub = new DataHub();
+
+        // Operações que esgotaram as tentativas (DEAD) voltam à fila a cada arranque
+        LocalRepository.get(this).write(sqlite::requeueDead);
+
         // Agenda a sincronização periódica da aplicação
         SyncScheduler.schedulePeriodic(this);
     }
+
+    public DataHub hub() {
+        return hub;
+    }
+
+    // Em builds debug, regista no logcat qualquer acesso a disco na main thread
+    // (a base de dados local deve ser usada só através do LocalRepository).
+    private void enableStrictModeInDebug() {
+        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) == 0) return;
+        StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                .detectDiskReads()
+                .detectDiskWrites()
+                .penaltyLog()
+                .build());
+        StrictMode.setVmPolicy(new StrictMode.VmPolicy.Builder()
+                .detectLeakedSqlLiteObjects()
+                .detectLeakedClosableObjects()
+                .penaltyLog()
+                .build());
+    }
 }
@@ -0,0 +1,121 @@
+package pt.ubi.pdm.projetofinal;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import androidx.annotation.Nullable;
+import java.io.File;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+// Carregamento de avatares (ficheiros do AvatarStore) para ImageViews.
+// - Cache em memória (LruCache) partilhada por todos os ecrãs, com 1/16 da memória da app.
+// - Descodifica numa thread de fundo, já reduzido (inSampleSize) ao tamanho da ImageView.
+// - Usa bitmaps HARDWARE (ficam na memória gráfica); se o decode falhar assim, volta ao ARGB_8888.
+// O ficheiro tem o hash do conteúdo no nome, por isso a entrada da cache nunca fica desatualizada.
+// load() é chamado na main thread.
+
+public final class AvatarLoader {
+
+    // Tamanho usado quando a ImageView ainda não tem dimensões (antes do layout)
+    private static final int DEFAULT_TARGET_PX = 256;
+
+    private static final AvatarLoader instance = new AvatarLoader();
+
+    private final LruCache<String, Bitmap> cache;
+    private final ExecutorService decoder =
+            Executors.newSingleThreadExecutor(r -> new Thread(r, "oa-avatar-decode"));
+    private final Handler main = new Handler(Looper.getMainLooper());
+    // Último pedido de cada ImageView: respostas de pedidos antigos são ignoradas
+    private final Map<ImageView, String> requests = new WeakHashMap<>();
+
+    private AvatarLoader() {
+        int maxKb = (int) (Runtime.getRuntime().maxMemory() / 1024 / 16);
+        cache = new LruCache<String, Bitmap>(maxKb) {
+            @Override protected int sizeOf(String key, Bitmap b) {
+                return Math.max(1, b.getAllocationByteCount() / 1024);
+            }
+        };
+    }
+
+    public static AvatarLoader get() {
+        return instance;
+    }
+
+    // Mostra o avatar do ficheiro na ImageView (ou o placeholder, se não houver ficheiro).
+    // Em cache → imediato; senão o placeholder atual fica até o decode terminar.
+    public void load(@Nullable File file, ImageView target, int placeholderRes) {
+        if (file == null) {
+            requests.remove(target);
+            target.setImageResource(placeholderRes);
+            return;
+        }
+        int size = targetSize(target);
+        String key = file.getAbsolutePath() + "@" + size;
+        Bitmap hit = cache.get(key);
+        if (hit != null) {
+            requests.remove(target);
+            target.setImageBitmap(hit);
+            return;
+        }
+        requests.put(target, key);
+        decoder.execute(() -> {
+            Bitmap bmp = decode(file, size);
+            if (bmp != null) cache.put(key, bmp);
+            main.post(() -> {
+                if (!key.equals(requests.get(target))) return;
+                requests.remove(target);
+                if (bmp != null) target.setImageBitmap(bmp);
+                else target.setImageResource(placeholderRes);
+            });
+        });
+    }
+
+    // Esquece o pedido pendente desta ImageView (ex.: a imagem foi definida por outra via).
+    public void cancel(ImageView target) {
+        requests.remove(target);
+    }
+
+    // ============================================================
+    // Secção: Decode (thread de fundo)
+    // ============================================================
+
+    @Nullable
+    private static Bitmap decode(File file, int targetPx) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getAbsolutePath(), bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null;
+
+        // Maior potência de 2 que mantém o lado menor >= alvo (a ImageView faz CENTER_CROP)
+        int scale = 1;
+        int min = Math.min(bounds.outWidth, bounds.outHeight);
+        while (min / (scale * 2) >= targetPx) scale *= 2;
+
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inSampleSize = scale;
+        opts.inPreferredConfig = Bitmap.Config.HARDWARE;
+        Bitmap bmp = BitmapFactory.decodeFile(file.getAbsolutePath(), opts);
+        if (bmp == null) {
+            opts.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            bmp = BitmapFactory.decodeFile(file.getAbsolutePath(), opts);
+        }
+        return bmp;
+    }
+
+    // Maior dimensão da ImageView (medida ou, antes do layout, a dos LayoutParams).
+    private static int targetSize(ImageView v) {
+        int size = Math.max(v.getWidth(), v.getHeight());
+        if (size > 0) return size;
+        ViewGroup.LayoutParams lp = v.getLayoutParams();
+        if (lp != null) size = Math.max(lp.width, lp.height);
+        return size > 0 ? size : DEFAULT_TARGET_PX;
+    }
+}
@@ -0,0 +1,241 @@
+package pt.ubi.pdm.projetofinal;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Base64;
+import androidx.annotation.Nullable;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ServerValue;
+import com.google.firebase.storage.FirebaseStorage;
+import com.google.firebase.storage.StorageMetadata;
+import com.google.firebase.storage.StorageReference;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+// Avatares guardados por conteúdo (hash).
+// - A imagem (JPEG) vai para o Firebase Storage em avatars/{uid}/{sha256}.jpg;
+//   no perfil (/users/{uid}/profile) fica só o photoHash.
+// - Cópia local em files/avatars/{sha256}.jpg: se o photoHash do perfil não mudou,
+//   não há download nem nova compressão.
+// - O último hash de cada utilizador fica nas SharedPreferences "oa_{uid}", para mostrar o avatar sem rede.
+// - photoB64 (formato antigo) continua a ser lido: os bytes entram na cache pelo seu hash
+//   e são migrados para o Storage uma só vez (não a cada resolve).
+// Os ficheiros são lidos/escritos numa thread própria; os callbacks chegam na main thread.
+
+public class AvatarStore {
+
+    public interface Callback<T> { void onResult(@Nullable T value); }
+
+    // O avatar enviado tem no máximo 512px, por isso 1 MiB chega com folga
+    private static final long MAX_DOWNLOAD_BYTES = 1024 * 1024;
+    private static final String PREF_HASH = "photoHash";
+    // Hash do photoB64 já migrado com sucesso a partir deste dispositivo
+    private static final String PREF_MIGRATED = "photoB64Migrated";
+
+    // Utilizadores com uma migração do photoB64 a decorrer (partilhado pelas instâncias)
+    private static final Set<String> migrating = Collections.synchronizedSet(new HashSet<>());
+
+    private static final ExecutorService io =
+            Executors.newSingleThreadExecutor(r -> new Thread(r, "oa-avatar-io"));
+
+    private final Context app;
+    private final File dir;
+    private final Handler main = new Handler(Looper.getMainLooper());
+
+    public AvatarStore(Context ctx) {
+        app = ctx.getApplicationContext();
+        dir = new File(app.getFilesDir(), "avatars");
+    }
+
+    // ============================================================
+    // Secção: Leitura
+    // ============================================================
+
+    // Ficheiro do último avatar conhecido deste utilizador (sem rede), ou null.
+    public void loadLocal(String uid, Callback<File> cb) {
+        io.execute(() -> {
+            String hash = prefs(uid).getString(PREF_HASH, null);
+            File f = hash == null ? null : file(hash);
+            post(cb, f != null && f.exists() ? f : null);
+        });
+    }
+
+    // Garante o ficheiro local do avatar descrito pelo perfil.
+    // - photoHash já em cache → entrega logo (sem download nem decode extra).
+    // - photoHash novo → descarrega do Storage, confirma o hash e guarda.
+    // - Sem photoHash mas com photoB64 (perfil antigo) → usa esses bytes e migra-os para o Storage.
+    // - Sem nenhum → null.
+    public void resolve(String uid, @Nullable String photoHash, @Nullable String legacyB64, Callback<File> cb) {
+        if (photoHash != null && !photoHash.isEmpty()) {
+            io.execute(() -> {
+                File f = file(photoHash);
+                if (f.exists()) {
+                    remember(uid, photoHash);
+                    post(cb, f);
+                    return;
+                }
+                blob(uid, photoHash).getBytes(MAX_DOWNLOAD_BYTES)
+                        .addOnSuccessListener(bytes -> io.execute(() -> {
+                            // O nome é o hash do conteúdo: bytes diferentes não entram na cache
+                            File out = photoHash.equals(sha256(bytes)) ? write(photoHash, bytes) : null;
+                            if (out != null) remember(uid, photoHash);
+                            post(cb, out);
+                        }))
+                        .addOnFailureListener(e -> cb.onResult(null));
+            });
+        } else if (legacyB64 != null && !legacyB64.isEmpty()) {
+            io.execute(() -> {
+                byte[] bytes;
+                try {
+                    bytes = Base64.decode(legacyB64, Base64.DEFAULT);
+                } catch (IllegalArgumentException e) {
+                    post(cb, null);
+                    return;
+                }
+                String hash = sha256(bytes);
+                File out = file(hash).exists() ? file(hash) : write(hash, bytes);
+                if (out != null) remember(uid, hash);
+                post(cb, out);
+
+                // Já migrados (mesmos bytes) ou migração a decorrer: não volta a enviar.
+                // Se o envio falhar, o próximo resolve tenta outra vez.
+                if (hash.equals(prefs(uid).getString(PREF_MIGRATED, null)) || !migrating.add(uid)) return;
+                main.post(() -> publish(uid, hash, bytes, null, sent -> {
+                    if (sent != null) prefs(uid).edit().putString(PREF_MIGRATED, sent).apply();
+                    migrating.remove(uid);
+                }));
+            });
+        } else {
+            post(cb, null);
+        }
+    }
+
+    // ============================================================
+    // Secção: Escrita
+    // ============================================================
+
+    // Novo avatar (JPEG já comprimido): cache local, Storage e, por fim, o photoHash no perfil
+    // (a mesma escrita apaga o photoB64). done recebe o hash, ou null se o envio falhar
+    // (a cópia local fica e continua a ser mostrada neste dispositivo).
+    public void upload(String uid, byte[] jpeg, @Nullable Callback<String> done) {
+        io.execute(() -> {
+            String previous = prefs(uid).getString(PREF_HASH, null);
+            String hash = sha256(jpeg);
+            write(hash, jpeg);
+            remember(uid, hash);
+            main.post(() -> publish(uid, hash, jpeg, previous, done));
+        });
+    }
+
+    // Remove o avatar do perfil, do Storage e da cache local.
+    public void remove(String uid) {
+        io.execute(() -> {
+            String previous = prefs(uid).getString(PREF_HASH, null);
+            prefs(uid).edit().remove(PREF_HASH).apply();
+            if (previous != null) file(previous).delete();
+            main.post(() -> {
+                Map<String, Object> upd = new HashMap<>();
+                upd.put("photoHash", null);
+                upd.put("photoB64", null);
+                profile(uid).updateChildren(upd);
+                if (previous != null) blob(uid, previous).delete();
+            });
+        });
+    }
+
+    // Envia os bytes para o Storage e só depois aponta o perfil para eles.
+    // O blob antigo é apagado quando o perfil já aponta para o novo.
+    private void publish(String uid, String hash, byte[] jpeg, @Nullable String previous,
+                         @Nullable Callback<String> done) {
+        StorageMetadata meta = new StorageMetadata.Builder()
+                .setContentType("image/jpeg")
+                .setCacheControl("private, max-age=31536000, immutable")
+                .build();
+        blob(uid, hash).putBytes(jpeg, meta)
+                .addOnSuccessListener(s -> {
+                    Map<String, Object> upd = new HashMap<>();
+                    upd.put("photoHash", hash);
+                    upd.put("photoB64", null);
+                    upd.put("photoUpdatedAt", ServerValue.TIMESTAMP);
+                    profile(uid).updateChildren(upd)
+                            .addOnSuccessListener(x -> {
+                                if (previous != null && !previous.equals(hash)) blob(uid, previous).delete();
+                                if (done != null) done.onResult(hash);
+                            })
+                            .addOnFailureListener(e -> { if (done != null) done.onResult(null); });
+                })
+                .addOnFailureListener(e -> { if (done != null) done.onResult(null); });
+    }
+
+    // ============================================================
+    // Secção: Helpers
+    // ============================================================
+
+    // Guarda o hash atual do utilizador e apaga a cópia do anterior (e o ficheiro do formato antigo).
+    private void remember(String uid, String hash) {
+        SharedPreferences sp = prefs(uid);
+        String previous = sp.getString(PREF_HASH, null);
+        if (hash.equals(previous)) return;
+        sp.edit().putString(PREF_HASH, hash).apply();
+        if (previous != null) file(previous).delete();
+        new File(app.getFilesDir(), "avatar_" + uid + ".jpg").delete();
+    }
+
+    @Nullable
+    private File write(String hash, byte[] bytes) {
+        if (!dir.exists() && !dir.mkdirs()) return null;
+        File f = file(hash);
+        File tmp = new File(dir, hash + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(bytes);
+        } catch (Exception e) {
+            tmp.delete();
+            return null;
+        }
+        return tmp.renameTo(f) ? f : null;
+    }
+
+    private File file(String hash) {
+        return new File(dir, hash + ".jpg");
+    }
+
+    private SharedPreferences prefs(String uid) {
+        return app.getSharedPreferences("oa_" + uid, Context.MODE_PRIVATE);
+    }
+
+    private static StorageReference blob(String uid, String hash) {
+        return FirebaseStorage.getInstance().getReference("avatars").child(uid).child(hash + ".jpg");
+    }
+
+    private static DatabaseReference profile(String uid) {
+        return FirebaseDatabase.getInstance().getReference("users").child(uid).child("profile");
+    }
+
+    private <T> void post(Callback<T> cb, @Nullable T value) {
+        main.post(() -> cb.onResult(value));
+    }
+
+    static String sha256(byte[] bytes) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            StringBuilder sb = new StringBuilder(64);
+            for (byte b : md.digest(bytes)) sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
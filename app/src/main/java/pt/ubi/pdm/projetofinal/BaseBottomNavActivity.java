@@ -2,10 +2,16 @@ package pt.ubi.pdm.projetofinal;
 
 
 import android.content.Intent;
+import androidx.activity.OnBackPressedCallback;
 import androidx.annotation.IdRes;
 import androidx.appcompat.app.AppCompatActivity;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 
+// Base dos ecrãs da barra de navegação (início, diário, exercícios, comunidade).
+// Cada separador é uma Activity que fica viva depois de aberta: trocar de separador traz a
+// instância existente para a frente (REORDER_TO_FRONT) em vez de a fechar e criar outra,
+// por isso não há novo inflate, nova ligação à base de dados nem novo carregamento a frio.
+// As Activities continuam a ligar/desligar os listeners em onStart/onStop.
 public abstract class BaseBottomNavActivity extends AppCompatActivity {
     private BottomNavigationView bottomNavRef;
     private boolean isSyncingSelection = false;
@@ -37,18 +43,24 @@ public abstract class BaseBottomNavActivity extends AppCompatActivity {
             else if (id == R.id.nav_community)  i = new Intent(this, CommunityActivity.class);
 
             if (i != null) {
-                // Evita criar múltiplas instâncias da mesma Activity
-                i.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP
-                        | Intent.FLAG_ACTIVITY_SINGLE_TOP
+                // Reaproveita a instância do separador se já existir (sem fechar a atual)
+                i.addFlags(Intent.FLAG_ACTIVITY_REORDER_TO_FRONT
                         | Intent.FLAG_ACTIVITY_NO_ANIMATION);
-                startActivity(i);              // Inicia a nova Activity
+                startActivity(i);              // Mostra o separador
                 overridePendingTransition(0, 0); // Sem animação de transição
-                finish();                      // Fecha a Activity atual
-                return true;
+                return false;                  // A seleção desta barra não muda (volta a este separador intacta)
             }
             return false; // Se não houver correspondência, não faz nada
         });
 
+        // "Voltar" num separador sai da app, como quando só existia uma Activity de separador
+        getOnBackPressedDispatcher().addCallback(this, new OnBackPressedCallback(true) {
+            @Override
+            public void handleOnBackPressed() {
+                finishAffinity();
+            }
+        });
+
         // Garante que o item visualmente selecionado corresponde à Activity atual
         syncBottomSelection();
     }
@@ -62,22 +74,26 @@ public abstract class BaseBottomNavActivity extends AppCompatActivity {
     }
 
 
-    //Lembra o utilizador que para utilizar aquela funcionalidade terá de aceitar permissões caso não seja cumprido reagenda o alerta daqui a 5 horas
+    //Regista a interação (em memória); o alerta de 5 horas só é reagendado quando o prazo avança o suficiente
     @Override
     public void onUserInteraction() {
         super.onUserInteraction();
-        if (Reminders.hasPostNotifPermission(this)) {
-            Reminders.scheduleInactivityAfterHours(this, 5); // Reagenda para 5 horas
-        }
+        InactivityTracker.touch(this);
     }
 
     //Garante que existe um canal para as notificações existe, e reagenda  alerta
     @Override
     protected void onResume() {
         super.onResume();
+        syncBottomSelection(); // A instância pode ter voltado para a frente (REORDER_TO_FRONT)
         Reminders.createChannel(this); // Garante que o canal de notificações existe
-        if (Reminders.hasPostNotifPermission(this)) {
-            Reminders.scheduleInactivityAfterHours(this, 5); // Reagenda alerta
-        }
+        InactivityTracker.touch(this); // Reagenda alerta (se necessário)
+    }
+
+    //Ao sair do ecrã, o alerta fica exatamente 5 horas depois da última interação
+    @Override
+    protected void onPause() {
+        super.onPause();
+        InactivityTracker.flush(this);
     }
 }
\ No newline at end of file
@@ -0,0 +1,149 @@
+package pt.ubi.pdm.projetofinal;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+// Espelho em bloco dos listeners do Firebase (diário e reflexões) para o SQLite.
+// - Na primeira ligação o Firebase dispara um onChildAdded por dia (até 365): em vez de
+//   consultar/escrever o SQLite e refrescar a UI em cada evento, os eventos ficam num buffer.
+// - Ao fim de uma janela curta, o buffer é aplicado numa única transação: no diário, uma query
+//   constrói o índice em memória dos dias recebidos e só as diferenças são escritas;
+//   as reflexões são deduplicadas pelo índice único do contentHash (upsert idempotente).
+// - Na mesma transação avança o cursor de cada nó (sync_cursor): maior createdAt do diário
+//   (só valores do servidor; entradas sem createdAt usam o relógio local e não contam)
+//   e maior dia das reflexões. Na próxima ligação os listeners só pedem o que vem depois.
+// - A UI é avisada uma vez por bloco (e só se algo mudou).
+// Os métodos offer* e flush correm na main thread (callbacks do Firebase).
+
+public class CloudMirror {
+
+    // Janela de agregação dos eventos (a contar do primeiro evento do bloco)
+    static final long FLUSH_WINDOW_MS = 250;
+    // Acima disto aplica logo, para não acumular demasiado em memória
+    static final int MAX_BUFFERED = 500;
+    // Sobreposição ao retomar pelo cursor do diário: reaplicar é idempotente, perder uma entrada não
+    public static final long CURSOR_OVERLAP_MS = 60_000L;
+
+    // Chamado na main thread depois de um bloco que alterou o SQLite.
+    public interface Listener { void onMirrored(int changedRows); }
+
+    private final LocalRepository repo;
+    private final String diaryNode;
+    private final String reflectionsNode;
+    private final Handler main = new Handler(Looper.getMainLooper());
+    @Nullable private final Listener listener;
+
+    private Map<String, sqlite.DiaryEntry> pendingDiary = new LinkedHashMap<>();
+    private Map<String, List<sqlite.Reflection>> pendingReflections = new LinkedHashMap<>();
+    // Maior createdAt do servidor no bloco (-1 = nenhum): é o único valor que pode avançar o cursor
+    private long pendingMaxCreatedAt = -1;
+    private boolean scheduled;
+    private final Runnable flushTask = this::flush;
+
+    // diaryNode/reflectionsNode: caminhos RTDB usados como chave dos cursores (ex.: "users/{uid}/diary").
+    public CloudMirror(LocalRepository repo, String diaryNode, String reflectionsNode, @Nullable Listener listener) {
+        this.repo = repo;
+        this.diaryNode = diaryNode;
+        this.reflectionsNode = reflectionsNode;
+        this.listener = listener;
+    }
+
+    // ============================================================
+    // Secção: Eventos
+    // ============================================================
+
+    // Entrada de diário vinda da cloud (a mais recente por dia ganha dentro do bloco).
+    // createdAt null: sem carimbo do servidor, guarda-se com a hora local mas o cursor não avança
+    // (um relógio adiantado faria as próximas queries saltar edições reais).
+    public void offerDiary(String dateId, String text, @Nullable Long createdAt) {
+        sqlite.DiaryEntry e = new sqlite.DiaryEntry();
+        e.dateId = dateId;
+        e.text = text;
+        e.updatedAt = createdAt != null ? createdAt : System.currentTimeMillis();
+        if (createdAt != null) pendingMaxCreatedAt = Math.max(pendingMaxCreatedAt, createdAt);
+        pendingDiary.put(dateId, e);
+        schedule();
+    }
+
+    // Todas as reflexões de um dia (o snapshot do dia substitui o anterior dentro do bloco).
+    public void offerReflections(String dateId, List<sqlite.Reflection> reflections) {
+        pendingReflections.put(dateId, reflections);
+        schedule();
+    }
+
+    private void schedule() {
+        if (pendingDiary.size() + pendingReflections.size() >= MAX_BUFFERED) {
+            flush();
+        } else if (!scheduled) {
+            scheduled = true;
+            main.postDelayed(flushTask, FLUSH_WINDOW_MS);
+        }
+    }
+
+    // Aplica já o que estiver no buffer (ex.: no onStop, para não perder eventos).
+    public void flush() {
+        main.removeCallbacks(flushTask);
+        scheduled = false;
+        if (pendingDiary.isEmpty() && pendingReflections.isEmpty()) return;
+
+        Map<String, sqlite.DiaryEntry> diary = pendingDiary;
+        Map<String, List<sqlite.Reflection>> reflections = pendingReflections;
+        long maxCreatedAt = pendingMaxCreatedAt;
+        pendingDiary = new LinkedHashMap<>();
+        pendingReflections = new LinkedHashMap<>();
+        pendingMaxCreatedAt = -1;
+
+        repo.write(db -> apply(db, diary, maxCreatedAt, reflections, diaryNode, reflectionsNode), changed -> {
+            if (changed > 0 && listener != null) listener.onMirrored(changed);
+        });
+    }
+
+    // ============================================================
+    // Secção: Aplicação em bloco (thread de escrita)
+    // ============================================================
+
+    // Compara o bloco com o estado local e escreve só o que difere, numa única transação
+    // (incluindo o avanço dos cursores). maxCreatedAt: maior createdAt do servidor no bloco (-1 = nenhum).
+    // Devolve o número de linhas escritas.
+    static int apply(sqlite db, Map<String, sqlite.DiaryEntry> diary, long maxCreatedAt,
+                     Map<String, List<sqlite.Reflection>> reflections,
+                     String diaryNode, String reflectionsNode) {
+        SQLiteDatabase w = db.getWritableDatabase();
+        w.beginTransactionNonExclusive();
+        try {
+            // Diário: escreve se o dia não existe localmente ou o texto mudou
+            List<sqlite.DiaryEntry> changedDiary = new ArrayList<>();
+            if (!diary.isEmpty()) {
+                Map<String, String> local = db.getDiaryTexts(diary.keySet());
+                for (sqlite.DiaryEntry e : diary.values()) {
+                    String cur = local.get(e.dateId);
+                    if (cur == null || !cur.trim().equals(e.text)) changedDiary.add(e);
+                }
+            }
+
+            db.upsertDiaries(changedDiary);
+
+            if (maxCreatedAt >= 0) db.advanceSyncCursor(diaryNode, maxCreatedAt);
+
+            // Reflexões: o índice do contentHash ignora as que já existem
+            int newReflections = 0;
+            for (List<sqlite.Reflection> day : reflections.values()) {
+                newReflections += db.upsertReflections(day);
+            }
+            String lastDay = null;
+            for (String day : reflections.keySet()) {
+                if (lastDay == null || day.compareTo(lastDay) > 0) lastDay = day;
+            }
+            if (lastDay != null) db.advanceSyncCursor(reflectionsNode, lastDay);
+            w.setTransactionSuccessful();
+            return changedDiary.size() + newReflections;
+        } finally { w.endTransaction(); }
+    }
+}
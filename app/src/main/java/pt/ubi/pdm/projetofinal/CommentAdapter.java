@@ -6,19 +6,31 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
-import java.util.List;
+import java.util.Objects;
 
 //Adapter responsável por apresentar a lista de comentários da comunidade numa RecyclerView.
-public class CommentAdapter extends RecyclerView.Adapter<CommentAdapter.CommentViewHolder> {
-
-    // Lista de comentários a ser apresentada
-    private final List<CommunityActivity.Comment> comments;
-
-    //Este construtor serve para inicializar o adaptador com a lista de comentários que será usada para preencher a RecyclerView.
-    // Sem esta lista, o Adapter não teria dados para mostrar.
-    public CommentAdapter(@NonNull List<CommunityActivity.Comment> comments) {
-        this.comments = comments;
+//A lista é entregue com submitList; o DiffUtil calcula só as linhas que mudaram.
+public class CommentAdapter extends ListAdapter<CommunityActivity.Comment, CommentAdapter.CommentViewHolder> {
+
+    //Compara comentários pelo id (mesmo item) e pelo autor/texto/estado pendente (mesmo conteúdo).
+    private static final DiffUtil.ItemCallback<CommunityActivity.Comment> DIFF =
+            new DiffUtil.ItemCallback<CommunityActivity.Comment>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull CommunityActivity.Comment a, @NonNull CommunityActivity.Comment b) {
+                    return Objects.equals(a.id, b.id);
+                }
+                @Override
+                public boolean areContentsTheSame(@NonNull CommunityActivity.Comment a, @NonNull CommunityActivity.Comment b) {
+                    return Objects.equals(a.author, b.author) && Objects.equals(a.text, b.text)
+                            && a.pending == b.pending;
+                }
+            };
+
+    public CommentAdapter() {
+        super(DIFF);
     }
 
 
@@ -42,20 +54,16 @@ public class CommentAdapter extends RecyclerView.Adapter<CommentAdapter.CommentV
     @Override
     public void onBindViewHolder(@NonNull CommentViewHolder holder, int position) {
         // Obtém o comentário na posição atual
-        CommunityActivity.Comment c = comments.get(position);
+        CommunityActivity.Comment c = getItem(position);
 
         // Define o autor (ou "Anónimo" se for nulo)
         holder.author.setText(c.author == null ? "Anónimo" : c.author);
 
         // Define o texto do comentário (ou vazio se for nulo)
         holder.text.setText(c.text == null ? "" : c.text);
-    }
 
-
-    //Cria um contador para registar quantos comentários existe
-    @Override
-    public int getItemCount() {
-        return comments != null ? comments.size() : 0;
+        // Comentário ainda por enviar (outbox) fica esbatido
+        holder.itemView.setAlpha(c.pending ? 0.6f : 1f);
     }
 
 
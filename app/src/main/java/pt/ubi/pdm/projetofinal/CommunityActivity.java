@@ -9,7 +9,9 @@ import android.widget.EditText;
 import android.widget.TextView;
 import android.widget.Toast;
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
@@ -17,36 +19,66 @@ import com.google.android.material.bottomsheet.BottomSheetDialog;
 import com.google.android.material.materialswitch.MaterialSwitch;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.database.ChildEventListener;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.Exclude;
 import com.google.firebase.database.FirebaseDatabase;
-import com.google.firebase.database.ServerValue;
+import com.google.firebase.database.MutableData;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.Transaction;
 import com.google.firebase.database.ValueEventListener;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Date;
 import java.util.Map;
+import java.util.Objects;
 
 // Classe responsável pelo ecrã da Comunidade.
-// Permite visualizar publicações, criar novas e comentar, com suporte a cache offline via Firebase.
+// Permite visualizar publicações, criar novas e comentar.
+// O feed é mostrado logo a partir da cache local (SQLite, limitada por LRU) e atualizado em background.
+// Posts e comentários novos vão pela outbox (enviados pelo SyncWorker) e aparecem logo como pendentes.
 
 public class CommunityActivity extends BaseBottomNavActivity {
 
     private SwipeRefreshLayout swipeRefresh;
     private RecyclerView rvPosts;
 
+    // /community: posts em /community/posts e comentários à parte em /community/comments/{postId}
+    private DatabaseReference communityRef;
     private DatabaseReference postsRef;
+    private DatabaseReference commentsRootRef;
     private FirebaseUser user;
+    private LocalRepository repo;
 
-    // Lista em memória dos posts (mostrados no RecyclerView)
+    // Tamanho de cada página do feed
+    private static final int PAGE_SIZE = 20;
+    // Começa a pedir a página seguinte quando faltam estes itens para o fim
+    private static final int PREFETCH_DISTANCE = 5;
+    // Limites da cache local do feed (LRU)
+    private static final int FEED_CACHE_MAX_POSTS = 200;
+    private static final int FEED_CACHE_MAX_COMMENTS = 2000;
+
+    // Lista em memória dos posts, do mais recente para o mais antigo (mostrados no RecyclerView)
     private final List<Post> posts = new ArrayList<>();
     private PostAdapter adapter;
 
+    // Paginação: posts mais antigos são pedidos com endBefore(createdAt, id) do último carregado
+    private boolean loadingOlder = false;
+    private boolean reachedEnd = false;
+    private boolean firstPageLoaded = false;
+
+    // Listener em tempo real, ligado aos posts novos (depois do mais recente carregado) e ao
+    // intervalo de posts já carregados (commentCount, edições e remoções dos posts mostrados)
+    private final List<Query> livePostsQueries = new ArrayList<>();
+    private ChildEventListener livePostsListener;
+
 
     // Inicia a interface e os componentes principais.
     // Liga a barra de navegação inferior, configura o RecyclerView e o SwipeRefreshLayout.
@@ -66,23 +98,35 @@ public class CommunityActivity extends BaseBottomNavActivity {
         user = FirebaseAuth.getInstance().getCurrentUser();
         if (user == null) { finish(); return; }
 
-        // --- RTDB: /community/posts (mantém sincronizado para offline) ---
-
-        postsRef = FirebaseDatabase.getInstance()
-                .getReference("community")
-                .child("posts");
-        postsRef.keepSynced(true);
+        // --- RTDB: /community/posts ---
+        // Sem keepSynced: a cópia offline é a cache SQLite (limitada), não o nó inteiro com comentários
+        communityRef = FirebaseDatabase.getInstance().getReference("community");
+        postsRef = communityRef.child("posts");
+        commentsRootRef = communityRef.child("comments");
+        repo = LocalRepository.get(this);
 
         // --- UI principal: pull-to-refresh + lista de posts ---
         swipeRefresh = findViewById(R.id.swipeRefresh);
         rvPosts = findViewById(R.id.rvPosts);
-        rvPosts.setLayoutManager(new LinearLayoutManager(this));
-        adapter = new PostAdapter(posts, this::openCommentsSheet);
+        LinearLayoutManager lm = new LinearLayoutManager(this);
+        rvPosts.setLayoutManager(lm);
+        adapter = new PostAdapter(this::openCommentsSheet);
         rvPosts.setAdapter(adapter);
 
-        // Gesto de refresh manual
+        // Perto do fim da lista → pede a página seguinte (mais antiga)
+        rvPosts.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override public void onScrolled(@NonNull RecyclerView rv, int dx, int dy) {
+                if (dy <= 0) return;
+                if (lm.findLastVisibleItemPosition() >= adapter.getItemCount() - PREFETCH_DISTANCE) {
+                    loadOlderPosts();
+                }
+            }
+        });
+
+        // Gesto de refresh manual (o listener em tempo real já traz os posts novos;
+        // o refresh só volta a pedir a primeira página para apanhar alterações)
         swipeRefresh.setOnRefreshListener(() -> {
-            loadPostsOnce();
+            loadFirstPage();
             stopRefreshIfStuck();
         });
         // Criar uma nova publicação
@@ -90,23 +134,42 @@ public class CommunityActivity extends BaseBottomNavActivity {
         findViewById(R.id.fabAddPost).setOnClickListener(v -> openNewPostSheet());
 
 
+        // Mostra já o que está em cache; a primeira página da rede junta-se por cima
+        repo.read(db -> db.getCachedPosts(PAGE_SIZE), cached -> {
+            if (firstPageLoaded || cached.isEmpty()) return;
+            for (Post p : cached) upsertPost(p);
+            publishPosts();
+        });
+        // Posts ainda na outbox (ex.: escritos offline noutra sessão)
+        repo.read(CommunityActivity::readPendingPosts, pending -> {
+            boolean changed = false;
+            for (Post p : pending) changed |= upsertPending(p);
+            if (changed) publishPosts();
+        });
+
         swipeRefresh.setRefreshing(true);
-        loadPostsOnce();
+        loadFirstPage();
         stopRefreshIfStuck();
 
 
-        // Listener de conectividade Firebase: se perder ligação, parar o spinner e avisar
-        FirebaseDatabase.getInstance().getReference(".info/connected")
-                .addValueEventListener(new ValueEventListener() {
-                    @Override public void onDataChange(@NonNull DataSnapshot s) {
-                        Boolean ok = s.getValue(Boolean.class);
-                        if (ok != null && !ok && swipeRefresh != null && swipeRefresh.isRefreshing()) {
-                            swipeRefresh.setRefreshing(false);
-                            toast("Sem ligação • a mostrar dados em cache (se existirem)");
-                        }
-                    }
-                    @Override public void onCancelled(@NonNull DatabaseError e) {}
-                });
+        // Conectividade (listener único do DataHub): se perder ligação, parar o spinner e avisar
+        DataHub.get(this).connected().observe(this, ok -> {
+            if (!ok && swipeRefresh != null && swipeRefresh.isRefreshing()) {
+                swipeRefresh.setRefreshing(false);
+                toast("Sem ligação • a mostrar dados em cache (se existirem)");
+            }
+        });
+    }
+
+    // Liga/desliga o listener em tempo real (só depois de existir a primeira página).
+    @Override protected void onStart() {
+        super.onStart();
+        if (firstPageLoaded) attachLivePosts();
+    }
+
+    @Override protected void onStop() {
+        super.onStop();
+        detachLivePosts();
     }
 
     // Indica que esta Activity corresponde ao item da comunidade na barra de navegação.
@@ -119,21 +182,21 @@ public class CommunityActivity extends BaseBottomNavActivity {
     // Secção: Carregar Posts
     // ============================================================
 
-    // Carrega até 100 publicações do Firebase ordenadas por data de criação.
-    // Inverte a ordem para mostrar os posts mais recentes primeiro.
-    // Atualiza o RecyclerView com os dados carregados.
-    private void loadPostsOnce() {
-        postsRef.orderByChild("createdAt").limitToLast(100)
+    // Carrega a primeira página (os PAGE_SIZE posts mais recentes por createdAt).
+    // Junta ao que já está na lista (por id) em vez de a limpar, e liga o listener em tempo real.
+    private void loadFirstPage() {
+        postsRef.orderByChild("createdAt").limitToLast(PAGE_SIZE)
                 .addListenerForSingleValueEvent(new ValueEventListener() {
                     @Override public void onDataChange(@NonNull DataSnapshot snap) {
-                        posts.clear();
-                        for (DataSnapshot d : snap.getChildren()) {
-                            Post p = d.getValue(Post.class);
-                            if (p != null) { p.id = d.getKey(); posts.add(p); }
-                        }
-                        Collections.reverse(posts);
-                        adapter.notifyDataSetChanged();
+                        List<Post> page = readPage(snap);
+                        dropMissingFromPage(page);
+                        for (Post p : page) upsertPost(p);
+                        cachePosts(page);
+                        if (!firstPageLoaded) reachedEnd = page.size() < PAGE_SIZE;
+                        firstPageLoaded = true;
+                        publishPosts();
                         swipeRefresh.setRefreshing(false);
+                        attachLivePosts();
                     }
                     @Override
                     public void onCancelled(@NonNull DatabaseError e) {
@@ -143,6 +206,186 @@ public class CommunityActivity extends BaseBottomNavActivity {
                 });
     }
 
+    // Página seguinte (mais antiga): keyset em (createdAt, id) do último post carregado.
+    private void loadOlderPosts() {
+        if (loadingOlder || reachedEnd || !firstPageLoaded) return;
+        Post oldest = lastConfirmedPost();
+        if (oldest == null) return;
+        loadingOlder = true;
+
+        postsRef.orderByChild("createdAt").endBefore(createdAtOf(oldest), oldest.id).limitToLast(PAGE_SIZE)
+                .addListenerForSingleValueEvent(new ValueEventListener() {
+                    @Override public void onDataChange(@NonNull DataSnapshot snap) {
+                        List<Post> page = readPage(snap);
+                        for (Post p : page) upsertPost(p);
+                        cachePosts(page);
+                        reachedEnd = page.size() < PAGE_SIZE;
+                        loadingOlder = false;
+                        publishPosts();
+                        // A página passa a ter alterações em tempo real (de onde começa até ao intervalo já ligado)
+                        if (!page.isEmpty() && livePostsListener != null) {
+                            Post pageOldest = page.get(0);
+                            attachLiveQuery(postsRef.orderByChild("createdAt")
+                                    .startAt(createdAtOf(pageOldest), pageOldest.id)
+                                    .endBefore(createdAtOf(oldest), oldest.id));
+                        }
+                    }
+                    @Override public void onCancelled(@NonNull DatabaseError e) {
+                        loadingOlder = false;
+                    }
+                });
+    }
+
+    // Tempo real em dois intervalos (por createdAt, id):
+    // - depois do mais recente carregado: posts novos;
+    // - do mais antigo ao mais recente carregados: commentCount, edições e remoções dos posts já
+    //   mostrados (e posts criados offline noutro dispositivo, com createdAt no meio da lista).
+    // As páginas mais antigas carregadas depois juntam o seu intervalo (loadOlderPosts).
+    private void attachLivePosts() {
+        if (livePostsListener != null) return;
+        livePostsListener = new ChildEventListener() {
+            @Override public void onChildAdded(@NonNull DataSnapshot d, String prev) { onLivePost(d); }
+            @Override public void onChildChanged(@NonNull DataSnapshot d, String prev) { onLivePost(d); }
+            @Override public void onChildRemoved(@NonNull DataSnapshot d) {
+                String id = d.getKey();
+                if (id == null) return;
+                if (removePost(id)) publishPosts();
+                repo.write(db -> db.removeCachedPost(id));
+            }
+            @Override public void onChildMoved(@NonNull DataSnapshot d, String prev) { }
+            @Override public void onCancelled(@NonNull DatabaseError e) { }
+        };
+
+        Post newest = firstConfirmedPost();
+        Post oldest = lastConfirmedPost();
+        if (newest == null) {
+            attachLiveQuery(postsRef.orderByChild("createdAt").startAfter(0));
+            return;
+        }
+        attachLiveQuery(postsRef.orderByChild("createdAt").startAfter(createdAtOf(newest), newest.id));
+        attachLiveQuery(postsRef.orderByChild("createdAt")
+                .startAt(createdAtOf(oldest), oldest.id)
+                .endAt(createdAtOf(newest), newest.id));
+    }
+
+    private void attachLiveQuery(Query q) {
+        q.addChildEventListener(livePostsListener);
+        livePostsQueries.add(q);
+    }
+
+    private void detachLivePosts() {
+        if (livePostsListener != null) {
+            for (Query q : livePostsQueries) q.removeEventListener(livePostsListener);
+        }
+        livePostsQueries.clear();
+        livePostsListener = null;
+    }
+
+    private void onLivePost(DataSnapshot d) {
+        Post p = d.getValue(Post.class);
+        if (p == null) return;
+        p.id = d.getKey();
+        // Ao ligar um intervalo chegam de novo os posts já carregados: só conta o que mudou
+        Post cur = findPost(p.id);
+        if (cur != null && !cur.pending && PostAdapter.DIFF.areContentsTheSame(cur, p)) return;
+        upsertPost(p);
+        publishPosts();
+        cachePosts(Collections.singletonList(p));
+    }
+
+    // Guarda na cache local e aplica o limite LRU (em background).
+    private void cachePosts(List<Post> page) {
+        if (page.isEmpty()) return;
+        repo.write(db -> {
+            db.cachePosts(page);
+            db.trimFeedCache(FEED_CACHE_MAX_POSTS, FEED_CACHE_MAX_COMMENTS);
+        });
+    }
+
+    // Posts vindos da cache que caem dentro da janela da primeira página mas já não vêm
+    // do servidor foram apagados entretanto: saem da lista e da cache.
+    private void dropMissingFromPage(List<Post> page) {
+        if (page.isEmpty()) return;
+        long oldestInPage = Long.MAX_VALUE;
+        HashSet<String> ids = new HashSet<>();
+        for (Post p : page) {
+            ids.add(p.id);
+            oldestInPage = Math.min(oldestInPage, createdAtOf(p));
+        }
+        List<String> gone = new ArrayList<>();
+        for (Post p : posts) {
+            if (!p.pending && createdAtOf(p) >= oldestInPage && !ids.contains(p.id)) gone.add(p.id);
+        }
+        for (String id : gone) {
+            removePost(id);
+            repo.write(db -> db.removeCachedPost(id));
+        }
+    }
+
+    private static List<Post> readPage(DataSnapshot snap) {
+        List<Post> page = new ArrayList<>();
+        for (DataSnapshot d : snap.getChildren()) {
+            Post p = d.getValue(Post.class);
+            if (p != null) { p.id = d.getKey(); page.add(p); }
+        }
+        return page;
+    }
+
+    // Insere ou substitui (por id) mantendo a ordem: mais recente primeiro; empate desfeito pelo id.
+    private void upsertPost(Post p) {
+        removePost(p.id);
+        int i = 0;
+        while (i < posts.size() && isNewer(posts.get(i), p)) i++;
+        posts.add(i, p);
+    }
+
+    // Post otimista: não substitui a versão já confirmada pelo servidor (mesmo id).
+    private boolean upsertPending(Post p) {
+        for (Post cur : posts) {
+            if (Objects.equals(cur.id, p.id) && !cur.pending) return false;
+        }
+        upsertPost(p);
+        return true;
+    }
+
+    private Post findPost(String id) {
+        for (Post p : posts) if (Objects.equals(p.id, id)) return p;
+        return null;
+    }
+
+    private boolean removePost(String id) {
+        for (int i = 0; i < posts.size(); i++) {
+            if (Objects.equals(posts.get(i).id, id)) { posts.remove(i); return true; }
+        }
+        return false;
+    }
+
+    private static boolean isNewer(Post a, Post b) {
+        int c = Long.compare(createdAtOf(a), createdAtOf(b));
+        if (c != 0) return c > 0;
+        return a.id != null && b.id != null && a.id.compareTo(b.id) > 0;
+    }
+
+    // Mais recente/mais antigo já confirmado pelo servidor (ignora posts otimistas por enviar)
+    private Post firstConfirmedPost() {
+        for (Post p : posts) if (!p.pending) return p;
+        return null;
+    }
+
+    private Post lastConfirmedPost() {
+        for (int i = posts.size() - 1; i >= 0; i--) if (!posts.get(i).pending) return posts.get(i);
+        return null;
+    }
+
+    private static long createdAtOf(Post p) {
+        return p.createdAt instanceof Long ? (Long) p.createdAt : 0L;
+    }
+
+    // O DiffUtil do ListAdapter calcula só as mudanças (sem notifyDataSetChanged)
+    private void publishPosts() {
+        adapter.submitList(new ArrayList<>(posts));
+    }
+
 
     // Se o carregamento de posts demorar mais de 4 segundos, cancela o spinner e mostra aviso
     private void stopRefreshIfStuck() {
@@ -160,7 +403,8 @@ public class CommunityActivity extends BaseBottomNavActivity {
 
     // Abre um BottomSheet com formulário para criar nova publicação.
     // Permite escrever texto e escolher se a publicação será anónima.
-    // Ao submeter, grava no Firebase e atualiza a lista de posts.
+    // Ao submeter, o post aparece logo no topo (otimista) e vai para a outbox com a chave push
+    // já reservada: o SyncWorker envia-o quando houver ligação e reenviar escreve no mesmo nó.
     private void openNewPostSheet() {
         BottomSheetDialog dlg = new BottomSheetDialog(this);
         View v = LayoutInflater.from(this).inflate(R.layout.dialog_new_post, null, false);
@@ -179,22 +423,28 @@ public class CommunityActivity extends BaseBottomNavActivity {
                     : (user.getDisplayName() != null && !user.getDisplayName().isEmpty()
                     ? user.getDisplayName() : "Utilizador");
 
-            Map<String, Object> post = new HashMap<>();
-            post.put("text", text);
-            post.put("author", author);
-            post.put("anonymous", swAnon.isChecked());
-            post.put("uid", user.getUid());
-            post.put("createdAt", ServerValue.TIMESTAMP);
-
-            postsRef.push().setValue(post)
-                    .addOnSuccessListener(x -> {
-                        toast("Publicado!");
-                        dlg.dismiss();
-                        swipeRefresh.setRefreshing(true);
-                        loadPostsOnce();
-                        stopRefreshIfStuck();
-                    })
-                    .addOnFailureListener(e -> toast("Falhou publicar"));
+            String postId = postsRef.push().getKey();
+            if (postId == null) { toast("Falhou publicar"); return; }
+            boolean anonymous = swAnon.isChecked();
+            long now = System.currentTimeMillis();
+
+            // Inserção otimista: o listener em tempo real substitui-o (mesmo id) pela versão do servidor
+            Post local = new Post();
+            local.id = postId;
+            local.text = text;
+            local.author = author;
+            local.anonymous = anonymous;
+            local.uid = user.getUid();
+            local.createdAt = now;
+            local.pending = true;
+            upsertPost(local);
+            publishPosts();
+            rvPosts.scrollToPosition(0);
+            dlg.dismiss();
+
+            byte[] payload = OutboxCodec.encodePost(postId, text, author, user.getUid(), anonymous, now);
+            repo.write(db -> db.enqueue(sqlite.OP_CREATE_POST, postId, payload, now),
+                    () -> SyncScheduler.kickNow(getApplicationContext()));
         });
 
         dlg.show();
@@ -206,7 +456,8 @@ public class CommunityActivity extends BaseBottomNavActivity {
 
     // Abre um BottomSheet com os comentários de uma publicação.
     // Permite visualizar e adicionar novos comentários.
-    // Os comentários são sincronizados em tempo real com o Firebase.
+    // Os comentários vêm de /community/comments/{postId} por páginas (CommentThread);
+    // os listeners são desligados quando o BottomSheet é fechado.
     private void openCommentsSheet(Post post) {
         BottomSheetDialog dlg = new BottomSheetDialog(this);
         View v = LayoutInflater.from(this).inflate(R.layout.dialog_comments, null, false);
@@ -218,44 +469,359 @@ public class CommunityActivity extends BaseBottomNavActivity {
         Button btnSend = v.findViewById(R.id.btnSendComment);
 
         tvPostText.setText(formatHeader(post));
-        rvComments.setLayoutManager(new LinearLayoutManager(this));
+        LinearLayoutManager lm = new LinearLayoutManager(this);
+        rvComments.setLayoutManager(lm);
 
-        List<Comment> comments = new ArrayList<>();
-        CommentAdapter cadapter = new CommentAdapter(comments);
+        CommentAdapter cadapter = new CommentAdapter();
         rvComments.setAdapter(cadapter);
 
-        DatabaseReference commentsRef = postsRef.child(post.id).child("comments");
+        CommentThread thread = new CommentThread(post, cadapter, rvComments);
+        thread.start();
 
-        commentsRef.orderByChild("createdAt")
-                .addValueEventListener(new ValueEventListener() {
-                    @Override public void onDataChange(@NonNull DataSnapshot snap) {
-                        comments.clear();
-                        for (DataSnapshot d : snap.getChildren()) {
-                            Comment c = d.getValue(Comment.class);
-                            if (c != null) { c.id = d.getKey(); comments.add(c); }
-                        }
-                        cadapter.notifyDataSetChanged();
-                    }
-                    @Override public void onCancelled(@NonNull DatabaseError e) { }
-                });
+        // No topo da lista → pede a página anterior (comentários mais antigos)
+        rvComments.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override public void onScrolled(@NonNull RecyclerView rv, int dx, int dy) {
+                if (dy < 0 && lm.findFirstVisibleItemPosition() <= PREFETCH_DISTANCE) thread.loadOlder();
+            }
+        });
+        dlg.setOnDismissListener(d -> thread.close());
 
+        // Comentário novo: aparece logo (pendente) e vai para a outbox; o SyncWorker escreve
+        // o comentário e depois acerta os contadores do post a partir dos comentários guardados.
+        DatabaseReference commentsRef = commentsRootRef.child(post.id);
         btnSend.setOnClickListener(view -> {
             String text = etComment.getText() == null ? "" : etComment.getText().toString().trim();
             if (text.isEmpty()) { etComment.setError("Escreve algo"); return; }
 
-            Map<String, Object> c = new HashMap<>();
-            c.put("text", text);
-            c.put("author", user.getDisplayName() != null && !user.getDisplayName().isEmpty()
-                    ? user.getDisplayName() : "Anónimo");
-            c.put("createdAt", ServerValue.TIMESTAMP);
-
-            commentsRef.push().setValue(c)
-                    .addOnSuccessListener(x -> etComment.setText(""));
+            String commentId = commentsRef.push().getKey();
+            if (commentId == null) return;
+            long now = System.currentTimeMillis();
+
+            Comment local = new Comment();
+            local.id = commentId;
+            local.text = text;
+            local.author = user.getDisplayName() != null && !user.getDisplayName().isEmpty()
+                    ? user.getDisplayName() : "Anónimo";
+            local.createdAt = now;
+            local.pending = true;
+            thread.addPending(Collections.singletonList(local));
+            etComment.setText("");
+
+            byte[] payload = OutboxCodec.encodeComment(post.id, commentId, text, local.author, now);
+            repo.write(db -> db.enqueue(sqlite.OP_CREATE_COMMENT, post.id, payload, now),
+                    () -> SyncScheduler.kickNow(getApplicationContext()));
         });
 
         dlg.show();
     }
 
+    // Fio de comentários de um post, carregado por páginas.
+    // - Primeiro mostra a cache local; depois a última página (limitToLast).
+    // - Páginas anteriores com endBefore(createdAt, id) do comentário mais antigo.
+    // - Comentários novos/alterados/apagados chegam por um ChildEventListener a partir do mais recente.
+    // - Comentários ainda na outbox aparecem como pendentes até o listener trazer a versão do servidor.
+    // - close() desliga o listener e ignora respostas que ainda estejam a caminho.
+    private class CommentThread {
+        private static final int PAGE = 30;
+
+        private final Post post;
+        private final CommentAdapter adapter;
+        private final RecyclerView list;
+        private final DatabaseReference ref;
+        // Ordem cronológica (mais antigo primeiro)
+        private final List<Comment> comments = new ArrayList<>();
+        private boolean firstPageLoaded, loadingOlder, reachedStart, closed;
+        private Query liveQuery;
+        private ChildEventListener liveListener;
+
+        CommentThread(Post post, CommentAdapter adapter, RecyclerView list) {
+            this.post = post;
+            this.adapter = adapter;
+            this.list = list;
+            this.ref = commentsRootRef.child(post.id);
+        }
+
+        void start() {
+            repo.read(db -> db.getCachedComments(post.id), cached -> {
+                if (closed || firstPageLoaded || cached.isEmpty()) return;
+                for (Comment c : cached) insert(c);
+                publish(true);
+            });
+            repo.read(db -> readPendingComments(db, post.id), this::addPending);
+
+            // Post antigo: os comentários (ou parte deles) ainda estão dentro do post.
+            // Decide pela existência do nó antigo, não pelo sítio novo estar vazio: um comentário
+            // novo pode já ter sido escrito em /community/comments antes de alguém abrir o post.
+            postsRef.child(post.id).child("comments").orderByChild("createdAt")
+                    .addListenerForSingleValueEvent(new ValueEventListener() {
+                        @Override public void onDataChange(@NonNull DataSnapshot snap) {
+                            if (closed) return;
+                            if (snap.hasChildren()) loadLegacy(snap);
+                            else loadFirstPage();
+                        }
+                        @Override public void onCancelled(@NonNull DatabaseError e) {
+                            if (!closed) loadFirstPage();
+                        }
+                    });
+        }
+
+        private void loadFirstPage() {
+            ref.orderByChild("createdAt").limitToLast(PAGE)
+                    .addListenerForSingleValueEvent(new ValueEventListener() {
+                        @Override public void onDataChange(@NonNull DataSnapshot snap) {
+                            if (closed) return;
+                            List<Comment> page = read(snap);
+                            replaceConfirmed(page);
+                            firstPageLoaded = true;
+                            reachedStart = page.size() < PAGE;
+                            publish(true);
+                            attachLive();
+                        }
+                        @Override public void onCancelled(@NonNull DatabaseError e) { }
+                    });
+        }
+
+        void loadOlder() {
+            if (closed || !firstPageLoaded || loadingOlder || reachedStart) return;
+            Comment oldest = firstConfirmed();
+            if (oldest == null) return;
+            loadingOlder = true;
+            ref.orderByChild("createdAt").endBefore(createdAtOf(oldest), oldest.id).limitToLast(PAGE)
+                    .addListenerForSingleValueEvent(new ValueEventListener() {
+                        @Override public void onDataChange(@NonNull DataSnapshot snap) {
+                            loadingOlder = false;
+                            if (closed) return;
+                            List<Comment> page = read(snap);
+                            reachedStart = page.size() < PAGE;
+                            comments.addAll(0, page);
+                            publish(false);
+                        }
+                        @Override public void onCancelled(@NonNull DatabaseError e) { loadingOlder = false; }
+                    });
+        }
+
+        void close() {
+            closed = true;
+            if (liveQuery != null && liveListener != null) liveQuery.removeEventListener(liveListener);
+            liveQuery = null;
+            liveListener = null;
+            // Guarda o que foi visto (a cache fica com as páginas carregadas)
+            if (firstPageLoaded) {
+                List<Comment> seen = new ArrayList<>();
+                for (Comment c : comments) if (!c.pending) seen.add(c);
+                repo.write(db -> {
+                    db.cacheComments(post.id, seen);
+                    db.trimFeedCache(FEED_CACHE_MAX_POSTS, FEED_CACHE_MAX_COMMENTS);
+                });
+            }
+        }
+
+        // Só comentários depois do mais recente já carregado
+        private void attachLive() {
+            if (closed || liveListener != null) return;
+            Comment newest = lastConfirmed();
+            liveQuery = newest == null
+                    ? ref.orderByChild("createdAt").startAfter(0)
+                    : ref.orderByChild("createdAt").startAfter(createdAtOf(newest), newest.id);
+            liveListener = new ChildEventListener() {
+                @Override public void onChildAdded(@NonNull DataSnapshot d, String prev) { upsert(d); }
+                @Override public void onChildChanged(@NonNull DataSnapshot d, String prev) { upsert(d); }
+                @Override public void onChildRemoved(@NonNull DataSnapshot d) {
+                    if (remove(d.getKey())) publish(false);
+                }
+                @Override public void onChildMoved(@NonNull DataSnapshot d, String prev) { }
+                @Override public void onCancelled(@NonNull DatabaseError e) { }
+            };
+            liveQuery.addChildEventListener(liveListener);
+        }
+
+        private void upsert(DataSnapshot d) {
+            Comment c = d.getValue(Comment.class);
+            if (c == null) return;
+            c.id = d.getKey();
+            boolean atEnd = !list.canScrollVertically(1);
+            insert(c);
+            publish(atEnd);
+        }
+
+        // Comentários otimistas (acabados de escrever ou ainda na outbox)
+        void addPending(List<Comment> pending) {
+            if (closed || pending.isEmpty()) return;
+            boolean changed = false;
+            for (Comment c : pending) {
+                Comment cur = find(c.id);
+                if (cur != null && !cur.pending) continue;
+                insert(c);
+                changed = true;
+            }
+            if (changed) publish(true);
+        }
+
+        // Substitui os comentários confirmados por uma página nova, mantendo os pendentes.
+        private void replaceConfirmed(List<Comment> page) {
+            List<Comment> pending = new ArrayList<>();
+            for (Comment c : comments) if (c.pending) pending.add(c);
+            comments.clear();
+            comments.addAll(page);
+            for (Comment c : pending) if (find(c.id) == null) insert(c);
+        }
+
+        // Insere ou substitui (por id) mantendo a ordem cronológica.
+        private void insert(Comment c) {
+            remove(c.id);
+            int i = comments.size();
+            while (i > 0 && isAfter(comments.get(i - 1), c)) i--;
+            comments.add(i, c);
+        }
+
+        private Comment find(String id) {
+            for (Comment c : comments) if (Objects.equals(c.id, id)) return c;
+            return null;
+        }
+
+        // Extremos já confirmados pelo servidor (os cursores da paginação ignoram os pendentes)
+        private Comment firstConfirmed() {
+            for (Comment c : comments) if (!c.pending) return c;
+            return null;
+        }
+
+        private Comment lastConfirmed() {
+            for (int i = comments.size() - 1; i >= 0; i--) if (!comments.get(i).pending) return comments.get(i);
+            return null;
+        }
+
+        private boolean remove(String id) {
+            for (int i = 0; i < comments.size(); i++) {
+                if (Objects.equals(comments.get(i).id, id)) { comments.remove(i); return true; }
+            }
+            return false;
+        }
+
+        // Leitor de compatibilidade: comentários em /community/posts/{postId}/comments (formato antigo).
+        // Junta-os aos do sítio novo (lidos por inteiro: posts antigos não usam paginação) e migra-os
+        // para /community/comments/{postId}. Se a migração falhar (ex.: regras), fica só a leitura.
+        private void loadLegacy(DataSnapshot legacySnap) {
+            ref.orderByChild("createdAt")
+                    .addListenerForSingleValueEvent(new ValueEventListener() {
+                        @Override public void onDataChange(@NonNull DataSnapshot snap) {
+                            if (closed) return;
+                            replaceConfirmed(read(snap));
+                            HashSet<String> ids = new HashSet<>();
+                            for (DataSnapshot d : snap.getChildren()) ids.add(d.getKey());
+                            for (Comment c : read(legacySnap)) { insert(c); ids.add(c.id); }
+                            firstPageLoaded = true;
+                            reachedStart = true;
+                            publish(true);
+                            attachLive();
+                            migrateLegacy(legacySnap, ids.size());
+                        }
+                        @Override public void onCancelled(@NonNull DatabaseError e) { }
+                    });
+        }
+
+        // 1) Copia os comentários para o sítio novo (mesmas chaves: repetir é inofensivo).
+        // 2) Numa transação sobre o post, remove do nó antigo os que foram copiados e sobe o
+        //    commentCount até ao total visto nos dois sítios (nunca desce nem soma: migrar duas
+        //    vezes, ou ao mesmo tempo que o SyncWorker acerta o contador, dá o mesmo resultado).
+        private void migrateLegacy(DataSnapshot legacySnap, long total) {
+            Map<String, Object> copies = new HashMap<>();
+            for (DataSnapshot d : legacySnap.getChildren()) {
+                copies.put(d.getKey(), d.getValue());
+            }
+            ref.updateChildren(copies).addOnSuccessListener(v ->
+                    postsRef.child(post.id).runTransaction(new Transaction.Handler() {
+                        @NonNull
+                        @Override public Transaction.Result doTransaction(@NonNull MutableData cur) {
+                            if (cur.getValue() == null) return Transaction.success(cur);
+                            MutableData legacy = cur.child("comments");
+                            long lastAt = 0;
+                            for (String key : copies.keySet()) {
+                                MutableData c = legacy.child(key);
+                                if (c.getValue() == null) continue;
+                                Long at = c.child("createdAt").getValue(Long.class);
+                                if (at != null) lastAt = Math.max(lastAt, at);
+                                c.setValue(null);
+                            }
+
+                            Long count = cur.child("commentCount").getValue(Long.class);
+                            if (count == null || count < total) cur.child("commentCount").setValue(total);
+                            Long prevAt = cur.child("lastCommentAt").getValue(Long.class);
+                            if (lastAt > 0 && (prevAt == null || prevAt < lastAt)) cur.child("lastCommentAt").setValue(lastAt);
+                            return Transaction.success(cur);
+                        }
+                        @Override public void onComplete(DatabaseError e, boolean committed, DataSnapshot snap) { }
+                    }));
+        }
+
+        private void publish(boolean scrollToEnd) {
+            List<Comment> snapshot = new ArrayList<>(comments);
+            adapter.submitList(snapshot, () -> {
+                if (scrollToEnd && !snapshot.isEmpty()) list.scrollToPosition(snapshot.size() - 1);
+            });
+        }
+
+        private List<Comment> read(DataSnapshot snap) {
+            List<Comment> out = new ArrayList<>();
+            for (DataSnapshot d : snap.getChildren()) {
+                Comment c = d.getValue(Comment.class);
+                if (c != null) { c.id = d.getKey(); out.add(c); }
+            }
+            return out;
+        }
+
+        private boolean isAfter(Comment a, Comment b) {
+            int c = Long.compare(createdAtOf(a), createdAtOf(b));
+            if (c != 0) return c > 0;
+            return a.id != null && b.id != null && a.id.compareTo(b.id) > 0;
+        }
+    }
+
+    private static long createdAtOf(Comment c) {
+        return c.createdAt instanceof Long ? (Long) c.createdAt : 0L;
+    }
+
+    // ============================================================
+    // Secção: Pendentes na outbox (thread de leitura)
+    // ============================================================
+
+    // Posts por enviar, como posts otimistas (pending).
+    private static List<Post> readPendingPosts(sqlite db) {
+        List<Post> out = new ArrayList<>();
+        for (sqlite.OutboxOperation op : db.getAwaiting(sqlite.OP_CREATE_POST, null, PAGE_SIZE)) {
+            try {
+                OutboxCodec.Payload p = OutboxCodec.decode(op.payload);
+                Post post = new Post();
+                post.id = p.postId;
+                post.text = p.text;
+                post.author = p.author;
+                post.anonymous = p.anonymous;
+                post.uid = p.uid;
+                post.createdAt = p.createdAt;
+                post.pending = true;
+                out.add(post);
+            } catch (IllegalArgumentException ignored) { }
+        }
+        return out;
+    }
+
+    // Comentários por enviar de um post (keyRef da operação = id do post).
+    private static List<Comment> readPendingComments(sqlite db, String postId) {
+        List<Comment> out = new ArrayList<>();
+        for (sqlite.OutboxOperation op : db.getAwaiting(sqlite.OP_CREATE_COMMENT, postId, 100)) {
+            try {
+                OutboxCodec.Payload p = OutboxCodec.decode(op.payload);
+                Comment c = new Comment();
+                c.id = p.remoteKey;
+                c.text = p.text;
+                c.author = p.author;
+                c.createdAt = p.createdAt;
+                c.pending = true;
+                out.add(c);
+            } catch (IllegalArgumentException ignored) { }
+        }
+        return out;
+    }
+
 
     // Formata o cabeçalho de uma publicação com autor, texto e data formatada.
     private String formatHeader(Post p) {
@@ -286,6 +852,11 @@ public class CommunityActivity extends BaseBottomNavActivity {
         public Boolean anonymous;
         public Object createdAt;
         public String uid;
+        // Desnormalizado: o feed mostra o número de comentários sem os descarregar
+        public Long commentCount;
+        public Object lastCommentAt;
+        // Só local: publicado otimisticamente, ainda sem confirmação do servidor
+        @Exclude public boolean pending;
         public Post() {}
     }
 
@@ -298,6 +869,8 @@ public class CommunityActivity extends BaseBottomNavActivity {
         public String text;
         public String author;
         public Object createdAt;
+        // Só local: ainda na outbox, sem confirmação do servidor
+        @Exclude public boolean pending;
         public Comment() {}
     }
 
@@ -306,12 +879,24 @@ public class CommunityActivity extends BaseBottomNavActivity {
     // ============================================================
 
     // Adapter para o RecyclerView que mostra as publicações.
-    // Liga os dados dos posts à interface e trata do clique para abrir comentários
-    private static class PostAdapter extends RecyclerView.Adapter<PostAdapter.VH> {
+    // Liga os dados dos posts à interface e trata do clique para abrir comentários.
+    // ListAdapter + DiffUtil: cada submitList só atualiza as linhas que mudaram.
+    private static class PostAdapter extends ListAdapter<Post, PostAdapter.VH> {
         interface OnPostClick { void onClick(Post p); }
-        private final List<Post> data;
         private final OnPostClick onClick;
-        PostAdapter(List<Post> d, OnPostClick c) { data = d; onClick = c; }
+        PostAdapter(OnPostClick c) { super(DIFF); onClick = c; }
+
+        static final DiffUtil.ItemCallback<Post> DIFF = new DiffUtil.ItemCallback<Post>() {
+            @Override public boolean areItemsTheSame(@NonNull Post a, @NonNull Post b) {
+                return Objects.equals(a.id, b.id);
+            }
+            @Override public boolean areContentsTheSame(@NonNull Post a, @NonNull Post b) {
+                return Objects.equals(a.text, b.text)
+                        && Objects.equals(a.author, b.author)
+                        && Objects.equals(a.commentCount, b.commentCount)
+                        && a.pending == b.pending;
+            }
+        };
 
         static class VH extends RecyclerView.ViewHolder {
             TextView tvAuthor, tvText, tvComments;
@@ -332,14 +917,14 @@ public class CommunityActivity extends BaseBottomNavActivity {
 
         @Override
         public void onBindViewHolder(@NonNull VH h, int i) {
-            Post p = data.get(i);
+            Post p = getItem(i);
             h.tvAuthor.setText(p.author == null ? "Anónimo" : p.author);
             h.tvText.setText(p.text);
+            long n = p.commentCount == null ? 0 : p.commentCount;
+            h.tvComments.setText(n > 0 ? "Ver comentários (" + n + ")" : "Ver comentários");
+            h.itemView.setAlpha(p.pending ? 0.6f : 1f);
             h.tvComments.setOnClickListener(v -> onClick.onClick(p));
         }
-
-        @Override
-        public int getItemCount() { return data.size(); }
     }
 
 }
@@ -0,0 +1,228 @@
+package pt.ubi.pdm.projetofinal;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.ValueEventListener;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+// Ponto único de acesso ao Realtime Database para os ecrãs (um por app, criado pelo App).
+// - Um só listener de ".info/connected", exposto como LiveData (as Activities deixam de criar o seu).
+// - DatabaseReferences de /users/{uid}/{nó} criadas uma vez, com keepSynced feito uma vez.
+// - Listeners partilhados e contados por subscritor: o primeiro ecrã liga, o último desliga,
+//   mas só depois de GRACE_MS. A barra de navegação traz o separador para a frente
+//   (REORDER_TO_FRONT) e o anterior fica parado (onStop, sem observadores ativos); voltar a ele
+//   dentro desse tempo reaproveita o listener e os dados já recebidos (sem voltar a descarregar
+//   a subárvore).
+// Usado só na main thread (os callbacks do Firebase também chegam na main thread).
+
+public final class DataHub {
+
+    public static final String NODE_MOODS = "moods";
+    public static final String NODE_DIARY = "diary";
+    public static final String NODE_REFLECTIONS = "reflections";
+    public static final String NODE_PROFILE = "profile";
+
+    // Tempo que um listener sem subscritores fica ligado (troca de separador)
+    private static final long GRACE_MS = 30_000;
+
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private final MutableLiveData<Boolean> connected = new MutableLiveData<>();
+    private final Map<String, DatabaseReference> refs = new HashMap<>();
+    private final Map<String, ValueLiveData> values = new HashMap<>();
+    private final Map<String, ChildStream> streams = new HashMap<>();
+
+    DataHub() {
+        FirebaseDatabase.getInstance().getReference(".info/connected")
+                .addValueEventListener(new ValueEventListener() {
+                    @Override public void onDataChange(@NonNull DataSnapshot s) {
+                        Boolean ok = s.getValue(Boolean.class);
+                        if (ok != null) connected.setValue(ok);
+                    }
+                    @Override public void onCancelled(@NonNull DatabaseError e) {}
+                });
+    }
+
+    public static DataHub get(Context ctx) {
+        return ((App) ctx.getApplicationContext()).hub();
+    }
+
+    // ============================================================
+    // Secção: Ligação e referências
+    // ============================================================
+
+    // Estado da ligação ao RTDB (sem valor até à primeira resposta).
+    public LiveData<Boolean> connected() {
+        return connected;
+    }
+
+    public boolean isOnline() {
+        return Boolean.TRUE.equals(connected.getValue());
+    }
+
+    // /users/{uid}/{node}, mantido sincronizado offline (keepSynced) desde a primeira vez que é pedido.
+    public DatabaseReference userRef(String uid, String node) {
+        String path = uid + "/" + node;
+        DatabaseReference ref = refs.get(path);
+        if (ref == null) {
+            ref = FirebaseDatabase.getInstance().getReference("users").child(uid).child(node);
+            ref.keepSynced(true);
+            refs.put(path, ref);
+        }
+        return ref;
+    }
+
+    // ============================================================
+    // Secção: Valores (ValueEventListener partilhado)
+    // ============================================================
+
+    // Snapshot de /users/{uid}/{node} como LiveData: liga com o primeiro observador ativo
+    // e desliga GRACE_MS depois do último. O último valor fica para quem observar a seguir.
+    public LiveData<DataSnapshot> userValue(String uid, String node) {
+        String path = uid + "/" + node;
+        ValueLiveData live = values.get(path);
+        if (live == null) {
+            live = new ValueLiveData(userRef(uid, node));
+            values.put(path, live);
+        }
+        return live;
+    }
+
+    private final class ValueLiveData extends LiveData<DataSnapshot> implements ValueEventListener {
+        private final DatabaseReference ref;
+        private boolean attached;
+        private final Runnable detach = () -> {
+            if (hasActiveObservers() || !attached) return;
+            ref.removeEventListener(this);
+            attached = false;
+        };
+
+        ValueLiveData(DatabaseReference ref) { this.ref = ref; }
+
+        @Override protected void onActive() {
+            main.removeCallbacks(detach);
+            if (attached) return;
+            attached = true;
+            ref.addValueEventListener(this);
+        }
+
+        @Override protected void onInactive() {
+            main.postDelayed(detach, GRACE_MS);
+        }
+
+        @Override public void onDataChange(@NonNull DataSnapshot s) { setValue(s); }
+        @Override public void onCancelled(@NonNull DatabaseError e) { attached = false; }
+    }
+
+    // ============================================================
+    // Secção: Filhos (ChildEventListener partilhado)
+    // ============================================================
+
+    // Subscreve os filhos de uma query identificada por "key".
+    // - Se já houver um listener com essa key, a query passada é ignorada e o subscritor recebe
+    //   primeiro os filhos já conhecidos (onChildAdded), depois os eventos novos.
+    // - Senão, liga "query" (o ecrã escolhe-a, ex.: a partir do cursor de sincronização).
+    public void watchChildren(String key, Query query, ChildEventListener subscriber) {
+        ChildStream s = streams.get(key);
+        if (s == null) {
+            s = new ChildStream(key, query);
+            streams.put(key, s);
+            s.subscribers.add(subscriber);
+            query.addChildEventListener(s);
+            return;
+        }
+        main.removeCallbacks(s.detach);
+        if (s.subscribers.contains(subscriber)) return;
+        s.subscribers.add(subscriber);
+        String prev = null;
+        for (DataSnapshot d : new ArrayList<>(s.children.values())) {
+            subscriber.onChildAdded(d, prev);
+            prev = d.getKey();
+        }
+    }
+
+    // Remove o subscritor; sem subscritores, o listener é desligado após GRACE_MS.
+    public void unwatchChildren(String key, ChildEventListener subscriber) {
+        ChildStream s = streams.get(key);
+        if (s == null) return;
+        s.subscribers.remove(subscriber);
+        if (s.subscribers.isEmpty()) {
+            main.removeCallbacks(s.detach);
+            main.postDelayed(s.detach, GRACE_MS);
+        }
+    }
+
+    // Key de watchChildren para um nó do utilizador.
+    public static String userKey(String uid, String node) {
+        return uid + "/" + node;
+    }
+
+    // Um listener no Firebase → vários subscritores. Guarda os filhos recebidos enquanto está
+    // ligado (inclui os que chegam no período de graça, que são entregues a quem subscrever a seguir).
+    private final class ChildStream implements ChildEventListener {
+        final String key;
+        final Query query;
+        final Map<String, DataSnapshot> children = new LinkedHashMap<>();
+        final List<ChildEventListener> subscribers = new ArrayList<>();
+        final Runnable detach = this::close;
+
+        ChildStream(String key, Query query) {
+            this.key = key;
+            this.query = query;
+        }
+
+        private void close() {
+            if (!subscribers.isEmpty()) return;
+            query.removeEventListener(this);
+            children.clear();
+            streams.remove(key);
+        }
+
+        // Cópia: um subscritor pode sair durante a entrega
+        private List<ChildEventListener> targets() {
+            return new ArrayList<>(subscribers);
+        }
+
+        @Override public void onChildAdded(@NonNull DataSnapshot d, @Nullable String prev) {
+            if (d.getKey() != null) children.put(d.getKey(), d);
+            for (ChildEventListener l : targets()) l.onChildAdded(d, prev);
+        }
+
+        @Override public void onChildChanged(@NonNull DataSnapshot d, @Nullable String prev) {
+            if (d.getKey() != null) children.put(d.getKey(), d);
+            for (ChildEventListener l : targets()) l.onChildChanged(d, prev);
+        }
+
+        @Override public void onChildRemoved(@NonNull DataSnapshot d) {
+            children.remove(d.getKey());
+            for (ChildEventListener l : targets()) l.onChildRemoved(d);
+        }
+
+        @Override public void onChildMoved(@NonNull DataSnapshot d, @Nullable String prev) {
+            for (ChildEventListener l : targets()) l.onChildMoved(d, prev);
+        }
+
+        // O Firebase já retirou o listener: a próxima subscrição liga de novo
+        @Override public void onCancelled(@NonNull DatabaseError e) {
+            main.removeCallbacks(detach);
+            streams.remove(key);
+            children.clear();
+            for (ChildEventListener l : targets()) l.onCancelled(e);
+        }
+    }
+}
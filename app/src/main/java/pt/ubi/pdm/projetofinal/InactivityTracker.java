@@ -0,0 +1,66 @@
+package pt.ubi.pdm.projetofinal;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+
+// Lembrete de inatividade sem uma chamada ao AlarmManager por toque.
+// - Cada interação só atualiza um timestamp em memória.
+// - O alarme só é reagendado quando o prazo (última interação + INACTIVITY_MS) avançou mais do que
+//   RESCHEDULE_THRESHOLD_MS em relação ao alarme já agendado, e ao sair do ecrã (onPause) com o valor exato.
+// - O timestamp fica nas SharedPreferences sempre que o alarme é reagendado; o ReminderReceiver
+//   consulta-o e, se o utilizador interagiu entretanto, adia o alarme em vez de notificar.
+// touch()/flush() são chamados na main thread.
+
+public final class InactivityTracker {
+
+    static final long INACTIVITY_MS = 5 * 60 * 60 * 1000L;             // 5 horas
+    private static final long RESCHEDULE_THRESHOLD_MS = 15 * 60 * 1000L; // alarme pode ficar até 15 min adiantado
+    // Margem para alarmes que disparam um pouco antes da hora (não exatos)
+    private static final long EARLY_FIRE_SLACK_MS = 60 * 1000L;
+
+    private static final String PREFS = "oa_inactivity";
+    private static final String KEY_LAST = "lastInteraction";
+
+    private static volatile long lastInteraction;
+    // Prazo do alarme agendado nesta execução (0 = nenhum)
+    private static long scheduledAt;
+
+    private InactivityTracker() {}
+
+    // Interação do utilizador: só há IPC se o alarme agendado ficou demasiado adiantado.
+    public static void touch(Context ctx) {
+        long now = System.currentTimeMillis();
+        lastInteraction = now;
+        if (now + INACTIVITY_MS - scheduledAt > RESCHEDULE_THRESHOLD_MS) reschedule(ctx, now);
+    }
+
+    // Ao sair do ecrã: alinha o alarme com a última interação real.
+    public static void flush(Context ctx) {
+        long last = lastInteraction;
+        if (last == 0 || last + INACTIVITY_MS == scheduledAt) return;
+        reschedule(ctx, last);
+    }
+
+    // Chamado pelo ReminderReceiver: momento em que o lembrete é devido (última interação conhecida + 5 h).
+    static long dueAt(Context ctx) {
+        long stored = prefs(ctx).getLong(KEY_LAST, 0L);
+        return Math.max(stored, lastInteraction) + INACTIVITY_MS;
+    }
+
+    // true se o alarme disparou antes do prazo (houve interação depois de ter sido agendado).
+    static boolean firedEarly(long dueAt) {
+        return System.currentTimeMillis() < dueAt - EARLY_FIRE_SLACK_MS;
+    }
+
+    private static void reschedule(Context ctx, long last) {
+        Context app = ctx.getApplicationContext();
+        scheduledAt = last + INACTIVITY_MS;
+        prefs(app).edit().putLong(KEY_LAST, last).apply();
+        if (Reminders.hasPostNotifPermission(app)) Reminders.scheduleInactivityAt(app, scheduledAt);
+    }
+
+    private static SharedPreferences prefs(Context ctx) {
+        return ctx.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,146 @@
+package pt.ubi.pdm.projetofinal;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+// Camada de acesso à base de dados local (sqlite) fora da main thread.
+// - Escritas: um único executor (single-writer), por isso ficam sempre pela ordem em que foram pedidas.
+// - Leituras: um pequeno pool de threads.
+// - Os callbacks são entregues na main thread, prontos para mexer na UI.
+// - Uma exceção numa leitura/escrita não se perde: fica no logcat e vai para o onError (se houver).
+// Uma única instância por processo, partilhada pelas Activities e pelo SyncWorker.
+
+public class LocalRepository {
+
+    // Leitura/escrita sobre o helper sqlite, executada numa thread de fundo.
+    public interface Query<T> { T run(sqlite db); }
+    public interface Command { void run(sqlite db); }
+    // Resultado entregue na main thread.
+    public interface Callback<T> { void onResult(T value); }
+    // Falha de uma leitura/escrita, entregue na main thread.
+    public interface ErrorCallback { void onError(Exception e); }
+
+    private static final String TAG = "LocalRepository";
+    private static final int READER_THREADS = 2;
+    private static volatile LocalRepository instance;
+
+    private final sqlite db;
+    private final Executor writer;
+    private final Executor readers;
+    private final Executor main;
+
+    private LocalRepository(Context appContext) {
+        // Modo afinado: WAL + statements reutilizados (UI, listeners e SyncWorker partilham esta instância)
+        this(new sqlite(appContext, true),
+                Executors.newSingleThreadExecutor(named("oa-db-writer")),
+                Executors.newFixedThreadPool(READER_THREADS, named("oa-db-reader")),
+                new Handler(Looper.getMainLooper())::post);
+    }
+
+    // Executores à escolha (nos testes: tudo na thread que chama, sem Looper).
+    LocalRepository(sqlite db, Executor writer, Executor readers, Executor main) {
+        this.db = db;
+        this.writer = writer;
+        this.readers = readers;
+        this.main = main;
+    }
+
+    public static LocalRepository get(Context ctx) {
+        if (instance == null) {
+            synchronized (LocalRepository.class) {
+                if (instance == null) instance = new LocalRepository(ctx.getApplicationContext());
+            }
+        }
+        return instance;
+    }
+
+    // Acesso direto ao helper, só para código que já corre em background (ex.: SyncWorker).
+    public sqlite helper() {
+        return db;
+    }
+
+    // ============================================================
+    // Secção: Leituras
+    // ============================================================
+
+    public <T> void read(Query<T> query, @Nullable Callback<T> callback) {
+        read(query, callback, null);
+    }
+
+    public <T> void read(Query<T> query, @Nullable Callback<T> callback, @Nullable ErrorCallback onError) {
+        readers.execute(() -> run(query, callback, onError));
+    }
+
+    // ============================================================
+    // Secção: Escritas
+    // ============================================================
+
+    public void write(Command command) {
+        write(command, null, null);
+    }
+
+    // Escreve e, quando terminar, corre onDone na main thread (ex.: reler e atualizar a UI).
+    public void write(Command command, @Nullable Runnable onDone) {
+        write(command, onDone, null);
+    }
+
+    // Se a escrita falhar, onDone não corre e o erro vai para onError.
+    public void write(Command command, @Nullable Runnable onDone, @Nullable ErrorCallback onError) {
+        writer.execute(() -> {
+            try {
+                command.run(db);
+            } catch (RuntimeException e) {
+                fail(e, onError);
+                return;
+            }
+            if (onDone != null) main.execute(onDone);
+        });
+    }
+
+    public <T> void write(Query<T> query, @Nullable Callback<T> callback) {
+        write(query, callback, null);
+    }
+
+    public <T> void write(Query<T> query, @Nullable Callback<T> callback, @Nullable ErrorCallback onError) {
+        writer.execute(() -> run(query, callback, onError));
+    }
+
+    // ============================================================
+    // Secção: Helpers
+    // ============================================================
+
+    // Corre na thread de fundo; entrega o resultado (ou o erro) na main thread.
+    private <T> void run(Query<T> query, @Nullable Callback<T> callback, @Nullable ErrorCallback onError) {
+        T value;
+        try {
+            value = query.run(db);
+        } catch (RuntimeException e) {
+            fail(e, onError);
+            return;
+        }
+        if (callback != null) main.execute(() -> callback.onResult(value));
+    }
+
+    // Executor.execute não guarda a exceção num Future que ninguém lê: fica sempre no logcat.
+    private void fail(RuntimeException e, @Nullable ErrorCallback onError) {
+        Log.e(TAG, "Falhou uma operação na base de dados local", e);
+        if (onError != null) main.execute(() -> onError.onError(e));
+    }
+
+    private static ThreadFactory named(String prefix) {
+        AtomicInteger n = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + n.incrementAndGet());
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        };
+    }
+}
@@ -11,6 +11,7 @@ import android.widget.Button;
 import android.widget.TextView;
 import android.widget.Toast;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.google.android.material.button.MaterialButtonToggleGroup;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
@@ -54,17 +55,24 @@ public class MainActivity extends BaseBottomNavActivity {
     private Button btnWellnessAction;
 
     // --- Dados ---
-    private sqlite db;
+    private LocalRepository repo;
     private String todayId;
     private Boolean lastConnectionStatus = true;
     private int currentSuggestion = -1;
     private FirebaseUser user;
     private DatabaseReference moodsRef;
     private ChildEventListener moodsChildListener;
+    private Query moodsQuery;
     private final TreeMap<String,Integer> cloudMoods = new TreeMap<>();
+    // Caminho RTDB dos humores, usado como chave do cursor de sincronização
+    private String moodsNode;
     private boolean suppressMoodSave = false;
     private boolean isOnline = false;
     private DatabaseReference reflectionsRef;
+    // Ligação, referências e listeners partilhados entre ecrãs
+    private DataHub hub;
+    // Avatar (ficheiro em cache por hash, descodificado pelo AvatarLoader)
+    private AvatarStore avatars;
 
 
     // ============================================================
@@ -87,28 +95,21 @@ public class MainActivity extends BaseBottomNavActivity {
         setupUI();
         setupDatabase();
 
-        // =====================  init Firebase (mood) =====================
+        // =====================  init Firebase (mood + reflections) =====================
+        // As referências (e o keepSynced) vêm do DataHub: criadas uma vez por app, não por Activity
+        hub = DataHub.get(this);
         user = FirebaseAuth.getInstance().getCurrentUser();
         if (user != null) {
-            moodsRef = FirebaseDatabase.getInstance()
-                    .getReference("users")
-                    .child(user.getUid())
-                    .child("moods");
-            moodsRef.keepSynced(true);
-        }
-        // =====================  init Firebase (Reflections) =====================
-        if (user != null) {
-            reflectionsRef = FirebaseDatabase.getInstance()
-                    .getReference("users")
-                    .child(user.getUid())
-                    .child("reflections");
-            reflectionsRef.keepSynced(true);
+            moodsRef = hub.userRef(user.getUid(), DataHub.NODE_MOODS);
+            moodsNode = "users/" + user.getUid() + "/moods";
+            reflectionsRef = hub.userRef(user.getUid(), DataHub.NODE_REFLECTIONS);
         }
 
         setupDailyMoodLocal();
         renderLast7DaysProgress();
         setupWellnessSuggestion();
         monitorFirebaseConnection();
+        observeProfile();
     }
 
     // ===================== Ligar/Desligar listener cloud =====================
@@ -121,10 +122,11 @@ public class MainActivity extends BaseBottomNavActivity {
     @Override
     protected void onStop() {
         super.onStop();
-        if (moodsChildListener != null && moodsRef != null) {
-            moodsRef.removeEventListener(moodsChildListener);
-            moodsChildListener = null;
+        if (moodsChildListener != null && moodsQuery != null) {
+            hub.unwatchChildren(DataHub.userKey(user.getUid(), DataHub.NODE_MOODS), moodsChildListener);
         }
+        moodsChildListener = null;
+        moodsQuery = null;
     }
     // ===============================================================================
 
@@ -181,33 +183,26 @@ public class MainActivity extends BaseBottomNavActivity {
     }
 
     private void setupDatabase() {
-        db = new sqlite(this);
+        repo = LocalRepository.get(this);
         todayId = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date());
     }
 
+    // Estado da ligação vem do listener único do DataHub (observado só enquanto a Activity existe).
     private void monitorFirebaseConnection() {
-        FirebaseDatabase.getInstance().getReference(".info/connected")
-                .addValueEventListener(new ValueEventListener() {
-                    @Override
-                    public void onDataChange(@NonNull DataSnapshot s) {
-                        Boolean ok = s.getValue(Boolean.class);
-                        if (ok != null) isOnline = ok; //Atualiza flag online/offline
-
-                        if (ok != null && !ok.equals(lastConnectionStatus)) {
-                            Toast.makeText(MainActivity.this,
-                                    ok ? "Ligação restabelecida ✅"
-                                            : "Sem ligação • a trabalhar offline",
-                                    Toast.LENGTH_SHORT).show();
-                            lastConnectionStatus = ok;
-
-                            // sempre que muda, tenta render cloud-first
-                            renderProgressCloudFirst();
-                        }
-                    }
-
-                    @Override
-                    public void onCancelled(@NonNull DatabaseError e) {}
-                });
+        hub.connected().observe(this, ok -> {
+            isOnline = ok; //Atualiza flag online/offline
+
+            if (!ok.equals(lastConnectionStatus)) {
+                Toast.makeText(MainActivity.this,
+                        ok ? "Ligação restabelecida ✅"
+                                : "Sem ligação • a trabalhar offline",
+                        Toast.LENGTH_SHORT).show();
+                lastConnectionStatus = ok;
+
+                // sempre que muda, tenta render cloud-first
+                renderProgressCloudFirst();
+            }
+        });
     }
 
     // ============================================================
@@ -283,9 +278,9 @@ public class MainActivity extends BaseBottomNavActivity {
     private void setupDailyMoodLocal() {
         // Se estiver offline, mostra seleção local para hoje.
         if (!isOnline) {
-            sqlite.MoodLog today = db.getMoodByDate(todayId);
-            if (today != null && today.mood >= 1 && today.mood <= 5)
-                moodGroup.check(new int[]{R.id.mood1, R.id.mood2, R.id.mood3, R.id.mood4, R.id.mood5}[today.mood - 1]);
+            repo.read(db -> db.getMoodByDate(todayId), today -> {
+                if (today != null) checkMoodSilently(today.mood);
+            });
         }
 
         moodGroup.addOnButtonCheckedListener((group, checkedId, isChecked) -> {
@@ -307,45 +302,66 @@ public class MainActivity extends BaseBottomNavActivity {
                 m.put("at", ServerValue.TIMESTAMP);
                 moodsRef.child(todayId).setValue(m);
 
-                db.upsertMood(todayId, mood, now);
+                repo.write(db -> db.upsertMood(todayId, mood, now), this::renderProgressCloudFirst);
             } else {
                 // offline: só local + fila
-                db.upsertMood(todayId, mood, now);
-
-                String payload = "{\"dateId\":\"" + todayId + "\"," +
-                        "\"mood\":" + mood + "," +
-                        "\"createdAt\":" + now + "}";
-                db.enqueue("UPSERT_MOOD", todayId, payload, now);
+                repo.write(db -> {
+                    db.upsertMood(todayId, mood, now);
+                    db.enqueue(sqlite.OP_UPSERT_MOOD, todayId, OutboxCodec.encodeMood(todayId, mood, now), now);
+                }, this::renderProgressCloudFirst);
             }
             // ===============================================================
 
             Toast.makeText(this, "Humor guardado ✅", Toast.LENGTH_SHORT).show();
-            renderProgressCloudFirst();
         });
     }
 
      // Mostra os últimos 7 dias de humor:
          // - Usa emojis para representar o humor diário.
-         // - Calcula a média e mostra em percentagem.
-         // - Usa dados locais (SQLite).
+         // - Média e dias seguidos vêm dos agregados (mood_agg), sem somar o histórico.
+         // - Usa dados locais (SQLite), lidos em background.
     private void renderLast7DaysProgress() {
-        List<sqlite.MoodLog> last = db.getMoodLastNDays(7);
-        StringBuilder line = new StringBuilder("Últimos 7 dias: ");
-        int sum = 0, count = 0;
+        repo.read(db -> {
+            MoodSummary s = MoodSummary.load(db, todayId);
+            s.last = db.getMoodLastNDays(7);
+            return s;
+        }, s -> {
+            List<Integer> vals = new ArrayList<>();
+            for (sqlite.MoodLog m : s.last) vals.add(m.mood);
+            renderEmojis(vals);
+            renderAverage(s);
+        });
+    }
 
+    private void renderEmojis(List<Integer> vals) {
+        StringBuilder line = new StringBuilder("Últimos 7 dias: ");
         for (int i = 0; i < 7; i++) {
-            if (i < last.size()) {
-                int m = last.get(i).mood;
-                line.append(emojiFor(m)).append(' ');
-                sum += m;
-                count++;
-            } else line.append("— ");
+            if (i < vals.size()) line.append(emojiFor(vals.get(i))).append(' ');
+            else line.append("— ");
         }
-
         tvProgressEmojis.setText(line.toString().trim());
-        int percent = count > 0 ? (int) Math.round(((sum / (double) count - 1) / 4) * 100) : 0;
+    }
+
+    private void renderAverage(MoodSummary s) {
+        int percent = s.week.percent();
         progressMood.setProgress(percent);
-        tvProgressAvg.setText("Média: " + percent + "%");
+        String text = "Média: " + percent + "%";
+        if (s.streak > 1) text += " • " + s.streak + " dias seguidos";
+        tvProgressAvg.setText(text);
+    }
+
+    // Média dos últimos 7 dias (de calendário) e sequência atual, lidas de mood_agg.
+    private static class MoodSummary {
+        MoodAggregates.Window week;
+        int streak;
+        List<sqlite.MoodLog> last;
+
+        static MoodSummary load(sqlite db, String todayId) {
+            MoodSummary s = new MoodSummary();
+            s.week = db.getMoodWindow(MoodAggregates.plusDays(todayId, -6), todayId);
+            s.streak = db.getMoodStreak(todayId);
+            return s;
+        }
     }
 
     private String emojiFor(int mood) {
@@ -361,14 +377,14 @@ public class MainActivity extends BaseBottomNavActivity {
 
     // ===================== Listener cloud (tempo-real) =====================
      // Liga um listener ao nó de humor no Firebase:
-     // - Escuta alterações em tempo real (últimos 14 dias).
+     // - Primeira vez: últimos 14 dias. Depois só a partir do último dia já espelhado
+     //   (cursor no SQLite); o resto da cache vem do SQLite.
+     // - Escuta alterações em tempo real.
      // - Atualiza cache local e interface.
      // - Se o humor de hoje mudar, atualiza o botão selecionado.
     private void attachMoodChildListener() {
         if (user == null || moodsRef == null || moodsChildListener != null) return;
 
-        Query q = moodsRef.orderByKey().limitToLast(14);
-
         moodsChildListener = new ChildEventListener() {
             private void upsertFromCloud(String dateId, Integer value, Long at) {
                 if (dateId == null || value == null) return;
@@ -378,18 +394,13 @@ public class MainActivity extends BaseBottomNavActivity {
 
                 // 2) espelho local (para offline)
                 long when = (at != null ? at : System.currentTimeMillis());
-                db.upsertMood(dateId, value, when);
+                repo.write(db -> {
+                    db.upsertMood(dateId, value, when);
+                    db.advanceSyncCursor(moodsNode, dateId);
+                });
 
                 // 3) se for hoje, refletir no toggle
-                if (dateId.equals(todayId) && value >= 1 && value <= 5) {
-                    int[] ids = {R.id.mood1, R.id.mood2, R.id.mood3, R.id.mood4, R.id.mood5};
-                    int target = ids[value - 1];
-                    if (moodGroup.getCheckedButtonId() != target) {
-                        suppressMoodSave = true;
-                        moodGroup.check(target);
-                        moodGroup.postDelayed(() -> suppressMoodSave = false, 120);
-                    }
-                }
+                if (dateId.equals(todayId)) checkMoodSilently(value);
 
                 renderProgressCloudFirst();
             }
@@ -417,7 +428,31 @@ public class MainActivity extends BaseBottomNavActivity {
             public void onCancelled(@NonNull DatabaseError e) {}
         };
 
-        q.addChildEventListener(moodsChildListener);
+        // Lê o cursor e semeia a cache com o SQLite antes de ligar o listener
+        ChildEventListener listener = moodsChildListener;
+        repo.read(db -> {
+            MoodSyncStart start = new MoodSyncStart();
+            start.lastDay = db.getSyncCursorKey(moodsNode);
+            start.recent = db.getMoodLastNDays(14);
+            return start;
+        }, start -> {
+            if (moodsChildListener != listener) return; // entretanto foi desligado (onStop)
+            for (sqlite.MoodLog m : start.recent) {
+                if (!cloudMoods.containsKey(m.dateId)) cloudMoods.put(m.dateId, m.mood);
+            }
+            // Se o DataHub ainda tiver o listener (troca de separador), esta query é ignorada
+            // e os humores já recebidos são entregues sem novo download
+            moodsQuery = start.lastDay == null
+                    ? moodsRef.orderByKey().limitToLast(14)
+                    : moodsRef.orderByKey().startAt(start.lastDay);
+            hub.watchChildren(DataHub.userKey(user.getUid(), DataHub.NODE_MOODS), moodsQuery, listener);
+            renderProgressCloudFirst();
+        });
+    }
+
+    private static class MoodSyncStart {
+        String lastDay;
+        List<sqlite.MoodLog> recent;
     }
     // ==============================================================================
 
@@ -441,48 +476,34 @@ public class MainActivity extends BaseBottomNavActivity {
 
             // garante toggle de hoje
             Integer todayCloud = cloudMoods.get(todayId);
-            if (todayCloud != null && todayCloud >= 1 && todayCloud <= 5) {
-                int[] ids = {R.id.mood1, R.id.mood2, R.id.mood3, R.id.mood4, R.id.mood5};
-                if (moodGroup.getCheckedButtonId() != ids[todayCloud - 1]) {
-                    suppressMoodSave = true;
-                    moodGroup.check(ids[todayCloud - 1]);
-                    moodGroup.postDelayed(() -> suppressMoodSave = false, 120);
-                }
-            }
+            if (todayCloud != null) checkMoodSilently(todayCloud);
             return;
         }
 
         // Caso contrário, usa SQLite
         renderLast7DaysProgress();
         if (!isOnline) {
-            sqlite.MoodLog today = db.getMoodByDate(todayId);
-            if (today != null && today.mood >= 1 && today.mood <= 5) {
-                int[] ids = {R.id.mood1, R.id.mood2, R.id.mood3, R.id.mood4, R.id.mood5};
-                if (moodGroup.getCheckedButtonId() != ids[today.mood - 1]) {
-                    suppressMoodSave = true;
-                    moodGroup.check(ids[today.mood - 1]);
-                    moodGroup.postDelayed(() -> suppressMoodSave = false, 120);
-                }
-            }
+            repo.read(db -> db.getMoodByDate(todayId), today -> {
+                if (today != null) checkMoodSilently(today.mood);
+            });
         }
     }
 
-    private void renderFromValues(List<Integer> vals) {
-        StringBuilder line = new StringBuilder("Últimos 7 dias: ");
-        int sum = 0, count = 0;
-
-        for (int i = 0; i < 7; i++) {
-            if (i < vals.size()) {
-                int m = vals.get(i);
-                line.append(emojiFor(m)).append(' ');
-                sum += m; count++;
-            } else line.append("— ");
+    // Seleciona o botão do humor sem disparar nova gravação (vem da cloud ou do SQLite).
+    private void checkMoodSilently(int mood) {
+        if (mood < 1 || mood > 5) return;
+        int[] ids = {R.id.mood1, R.id.mood2, R.id.mood3, R.id.mood4, R.id.mood5};
+        if (moodGroup.getCheckedButtonId() != ids[mood - 1]) {
+            suppressMoodSave = true;
+            moodGroup.check(ids[mood - 1]);
+            moodGroup.postDelayed(() -> suppressMoodSave = false, 120);
         }
+    }
 
-        tvProgressEmojis.setText(line.toString().trim());
-        int percent = count > 0 ? (int) Math.round(((sum / (double) count - 1) / 4) * 100) : 0;
-        progressMood.setProgress(percent);
-        tvProgressAvg.setText("Média: " + percent + "%");
+    // Emojis da cache cloud; média e sequência dos agregados locais (o listener espelha cada dia no SQLite).
+    private void renderFromValues(List<Integer> vals) {
+        renderEmojis(vals);
+        repo.read(db -> MoodSummary.load(db, todayId), this::renderAverage);
     }
     // =========================================================================================
 
@@ -560,12 +581,15 @@ public class MainActivity extends BaseBottomNavActivity {
         String dateId = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date());
         long now = System.currentTimeMillis();
 
+        // Chave push gerada já no cliente (funciona offline): a mesma reflexão fica com
+        // a mesma identidade no SQLite, na outbox e no RTDB
+        String entryId = FirebaseDatabase.getInstance().getReference().push().getKey();
+
         // guarda SEMPRE local (histórico + offline)
-        db.insertReflection(dateId, text, now);
+        repo.write(db -> db.upsertReflection(dateId, text, now, entryId));
 
         // cloud-first
         if (reflectionsRef != null) {
-            String entryId = reflectionsRef.child(dateId).push().getKey();
             if (entryId != null) {
                 Map<String, Object> payload = new HashMap<>();
                 payload.put("text", text);
@@ -577,29 +601,21 @@ public class MainActivity extends BaseBottomNavActivity {
                                 Toast.makeText(this, "Reflexão guardada na cloud ✅", Toast.LENGTH_SHORT).show()
                         )
                         .addOnFailureListener(e -> {
-                            String q = "{\"dateId\":\"" + dateId + "\","
-                                    + "\"text\":" + quoteJson(text) + ","
-                                    + "\"createdAt\":" + now + "}";
-                            db.enqueue("UPSERT_REFLECTION", dateId, q, now);
+                            repo.write(db -> db.enqueue(sqlite.OP_UPSERT_REFLECTION, dateId,
+                                    OutboxCodec.encodeReflection(dateId, text, now, entryId), now));
                             Toast.makeText(this, "Sem ligação — guardado localmente (vai sincronizar)", Toast.LENGTH_SHORT).show();
                         });
             }
         } else {
             // sem auth/ligação: segue fila de sync
-            String q = "{\"dateId\":\"" + dateId + "\","
-                    + "\"text\":" + quoteJson(text) + ","
-                    + "\"createdAt\":" + now + "}";
-            db.enqueue("UPSERT_REFLECTION", dateId, q, now);
+            repo.write(db -> db.enqueue(sqlite.OP_UPSERT_REFLECTION, dateId,
+                    OutboxCodec.encodeReflection(dateId, text, now, entryId), now));
             Toast.makeText(this, "Sem ligação — guardado localmente (vai sincronizar)", Toast.LENGTH_SHORT).show();
         }
 
         SyncScheduler.kickNow(this);
     }
 
-    private static String quoteJson(String s) {
-        return "\"" + s.replace("\\","\\\\").replace("\"","\\\"") + "\"";
-    }
-
     // ============================================================
     // Secção: Sugestões de bem-estar
     // ============================================================
@@ -656,6 +672,8 @@ public class MainActivity extends BaseBottomNavActivity {
                 .show();
     }
 
+    // Mostra já o último tempo de ecrã em cache e atualiza quando o ScreenTimeStats
+    // acabar de ler os eventos novos (em background).
     private void refreshWellness() {
         if (!hasUsageAccess()) {
             tvWellnessBody.setText("Ativa o acesso a 'Uso de apps' para personalizar as pausas.");
@@ -664,7 +682,14 @@ public class MainActivity extends BaseBottomNavActivity {
             return;
         }
 
-        long screenMs = getTodayScreenTimeMillis();
+        ScreenTimeStats stats = ScreenTimeStats.get(this);
+        renderWellness(Math.max(0L, stats.cached()));
+        stats.refresh(ms -> {
+            if (!isFinishing() && !isDestroyed()) renderWellness(ms);
+        });
+    }
+
+    private void renderWellness(long screenMs) {
         if (screenMs >= 4L * 60L * 60L * 1000L) {
             tvWellnessBody.setText("Hoje já usaste cerca de " + formatDuration(screenMs) + " de ecrã. Faz uma pausa de 5–10 minutos para recuperar foco.");
             btnWellnessAction.setText("Fazer pausa");
@@ -696,45 +721,6 @@ public class MainActivity extends BaseBottomNavActivity {
         return mode == android.app.AppOpsManager.MODE_ALLOWED;
     }
 
-    private long getTodayScreenTimeMillis() {
-        try {
-            android.app.usage.UsageStatsManager usm =
-                    (android.app.usage.UsageStatsManager) getSystemService(Context.USAGE_STATS_SERVICE);
-
-            Calendar cal = Calendar.getInstance();
-            cal.set(Calendar.HOUR_OF_DAY, 0);
-            cal.set(Calendar.MINUTE, 0);
-            cal.set(Calendar.SECOND, 0);
-            cal.set(Calendar.MILLISECOND, 0);
-
-            Map<String, android.app.usage.UsageStats> map =
-                    usm.queryAndAggregateUsageStats(cal.getTimeInMillis(), System.currentTimeMillis());
-
-            long total = 0L;
-            if (map != null) {
-                for (Map.Entry<String, android.app.usage.UsageStats> entry : map.entrySet()) {
-                    String pkg = entry.getKey();
-                    android.app.usage.UsageStats u = entry.getValue();
-                    if (u == null || pkg == null) continue;
-                    if (pkg.equals(getPackageName()) ||
-                            pkg.startsWith("com.android") ||
-                            pkg.startsWith("com.google.android") ||
-                            pkg.contains("launcher") ||
-                            pkg.contains("systemui") ||
-                            pkg.contains("inputmethod") ||
-                            pkg.contains("settings") ||
-                            pkg.contains("packageinstaller") ||
-                            pkg.contains("wellbeing")) continue;
-                    if (u.getTotalTimeInForeground() > 20_000)
-                        total += u.getTotalTimeInForeground();
-                }
-            }
-            return (long) (total * 0.4); // correção empírica
-        } catch (SecurityException se) {
-            return 0L;
-        }
-    }
-
     private String formatDuration(long ms) {
         long minutes = ms / 60000L;
         return String.format(Locale.getDefault(), "%dh %02dmin", minutes / 60, minutes % 60);
@@ -755,8 +741,8 @@ public class MainActivity extends BaseBottomNavActivity {
 
      // Atualiza o cabeçalho com nome e avatar do utilizador:
      // - Usa dados locais (SharedPreferences).
-     // - Se disponível, atualiza com dados do Firebase (nome e imagem).
-     // - Guarda avatar localmente para uso offline.
+     // - Se disponível, atualiza com dados do Firebase (nome e photoHash).
+     // - O avatar vem do AvatarStore: com o mesmo photoHash não há download nem decode.
 
 
     private void refreshProfileHeader() {
@@ -772,56 +758,35 @@ public class MainActivity extends BaseBottomNavActivity {
         String nomeSP = sp.getString("nome", null);
         if (nomeSP != null && !nomeSP.isEmpty()) tvGreeting.setText("Olá, " + nomeSP + "!");
 
-        loadLocalAvatar(btnProfile, uid);
+        if (avatars == null) avatars = new AvatarStore(this);
+        avatars.loadLocal(uid, f -> showAvatar(btnProfile, f));
+    }
 
-        // Dados Firebase (nome + imagem Base64)
-        DatabaseReference profileRef = FirebaseDatabase.getInstance()
-                .getReference("users").child(uid).child("profile");
+    // Dados Firebase do perfil (nome + photoHash; photoB64 só em perfis antigos).
+    // O listener é o do DataHub: ao voltar a este separador o último perfil é entregue sem novo pedido.
+    private void observeProfile() {
+        if (user == null) return;
+        String uid = user.getUid();
+        TextView tvGreeting = findViewById(R.id.tvGreeting);
+        ShapeableImageView btnProfile = findViewById(R.id.btnProfile);
+        android.content.SharedPreferences sp = getSharedPreferences("oa_" + uid, MODE_PRIVATE);
+        if (avatars == null) avatars = new AvatarStore(this);
 
-        profileRef.addListenerForSingleValueEvent(new ValueEventListener() {
-            @Override public void onDataChange(@NonNull DataSnapshot snap) {
-                String displayName = snap.child("displayName").getValue(String.class);
-                if (displayName != null && !displayName.isEmpty()) {
-                    tvGreeting.setText("Olá, " + displayName + "!");
-                    sp.edit().putString("nome", displayName).apply();
-                }
-                String b64 = snap.child("photoB64").getValue(String.class);
-                if (b64 != null && !b64.isEmpty()) saveAndSetAvatar(btnProfile, b64, uid);
+        hub.userValue(uid, DataHub.NODE_PROFILE).observe(this, snap -> {
+            String displayName = snap.child("displayName").getValue(String.class);
+            if (displayName != null && !displayName.isEmpty()) {
+                tvGreeting.setText("Olá, " + displayName + "!");
+                sp.edit().putString("nome", displayName).apply();
             }
-            @Override public void onCancelled(@NonNull DatabaseError error) {}
+            String hash = snap.child("photoHash").getValue(String.class);
+            String b64 = snap.child("photoB64").getValue(String.class);
+            avatars.resolve(uid, hash, b64, f -> showAvatar(btnProfile, f));
         });
     }
 
-    private void loadLocalAvatar(ShapeableImageView img, String uid) {
-        try {
-            java.io.File avatarFile = new java.io.File(getFilesDir(), "avatar_" + uid + ".jpg");
-            if (avatarFile.exists()) {
-                android.graphics.Bitmap bmp = android.graphics.BitmapFactory.decodeFile(avatarFile.getAbsolutePath());
-                if (bmp != null) {
-                    img.setScaleType(android.widget.ImageView.ScaleType.CENTER_CROP);
-                    img.setImageBitmap(bmp);
-                }
-            }
-        } catch (Exception ignored) {}
-    }
-
-    private void saveAndSetAvatar(ShapeableImageView img, String b64, String uid) {
-        android.graphics.Bitmap bmp = base64ToBitmap(b64);
-        if (bmp == null) return;
+    // Decode em background e cache em memória (AvatarLoader): voltar ao ecrã não volta a descodificar.
+    private void showAvatar(ShapeableImageView img, @Nullable java.io.File f) {
         img.setScaleType(android.widget.ImageView.ScaleType.CENTER_CROP);
-        img.setImageBitmap(bmp);
-        try (java.io.FileOutputStream out =
-                     new java.io.FileOutputStream(new java.io.File(getFilesDir(), "avatar_" + uid + ".jpg"))) {
-            bmp.compress(android.graphics.Bitmap.CompressFormat.JPEG, 90, out);
-        } catch (Exception ignored) {}
-    }
-
-    private android.graphics.Bitmap base64ToBitmap(String b64) {
-        try {
-            byte[] data = android.util.Base64.decode(b64, android.util.Base64.DEFAULT);
-            return android.graphics.BitmapFactory.decodeByteArray(data, 0, data.length);
-        } catch (Exception e) {
-            return null;
-        }
+        AvatarLoader.get().load(f, img, android.R.drawable.ic_menu_myplaces);
     }
 }
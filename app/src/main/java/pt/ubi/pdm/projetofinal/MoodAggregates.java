@@ -0,0 +1,131 @@
+package pt.ubi.pdm.projetofinal;
+
+import java.time.LocalDate;
+import java.time.temporal.IsoFields;
+import java.util.Locale;
+
+
+// Agregados de humor (tabela mood_agg, mantida pelo sqlite a cada upsertMood).
+// - Linhas por dia (D), semana ISO (W) e mês (M) com soma e contagem.
+// - As linhas de dia guardam também somas acumuladas (cumSum/cumCount) desde o primeiro registo
+//   e a sequência de dias seguidos (streak) que termina nesse dia.
+// - Qualquer janela [de, até] sai de duas linhas acumuladas: acum(até) - acum(antes de "de"),
+//   sem percorrer o histórico (30/90/365 dias custam o mesmo que 7).
+// Aqui ficam as chaves dos períodos e as contas dos acumulados/sequências (DayStore);
+// o SQL está no sqlite.
+
+public final class MoodAggregates {
+
+    public static final String PERIOD_DAY = "D";
+    public static final String PERIOD_WEEK = "W";
+    public static final String PERIOD_MONTH = "M";
+
+    private MoodAggregates() {}
+
+    // Soma e contagem de registos numa janela (ou num período).
+    public static final class Window {
+        public final long sum;
+        public final int count;
+
+        public Window(long sum, int count) {
+            this.sum = sum;
+            this.count = count;
+        }
+
+        public double average() {
+            return count == 0 ? 0 : sum / (double) count;
+        }
+
+        // Média em percentagem da escala 1..5 (1 → 0%, 5 → 100%), como no ecrã inicial.
+        public int percent() {
+            return count == 0 ? 0 : (int) Math.round(((average() - 1) / 4) * 100);
+        }
+    }
+
+    // Linha de dia: humor do dia, acumulados até ele (inclusive) e dias seguidos que terminam nele.
+    public static final class DayRow {
+        public final String dateId;
+        public final int mood;
+        public final long cumSum;
+        public final int cumCount;
+        public final int streak;
+
+        public DayRow(String dateId, int mood, long cumSum, int cumCount, int streak) {
+            this.dateId = dateId;
+            this.mood = mood;
+            this.cumSum = cumSum;
+            this.cumCount = cumCount;
+            this.streak = streak;
+        }
+    }
+
+    // Linhas de dia guardadas (no sqlite, a tabela mood_agg; nos testes, um mapa).
+    public interface DayStore {
+        // Último dia registado antes de dateId, ou null.
+        DayRow lastBefore(String dateId);
+        void insert(DayRow row);
+        void setMood(String dateId, int mood);
+        // Soma aos acumulados de todos os dias >= fromDateId.
+        void addToCumulative(String fromDateId, long sum, int count);
+        // false se o dia não tem registo.
+        boolean setStreak(String dateId, int streak);
+    }
+
+    // ============================================================
+    // Secção: Atualização incremental
+    // ============================================================
+
+    // Linha do dia que se segue a prev (null = primeiro registo).
+    public static DayRow follow(DayRow prev, String dateId, int mood) {
+        if (prev == null) return new DayRow(dateId, mood, mood, 1, 1);
+        int streak = prev.dateId.equals(plusDays(dateId, -1)) ? prev.streak + 1 : 1;
+        return new DayRow(dateId, mood, prev.cumSum + mood, prev.cumCount + 1, streak);
+    }
+
+    // Aplica um registo novo (old == null) ou alterado. Para o dia de hoje custa um número fixo de
+    // operações; um dia antigo (ex.: histórico vindo da cloud) também ajusta os acumulados dos dias
+    // seguintes e, se ligar duas sequências, os streaks dos dias seguidos que vêm a seguir.
+    public static void apply(DayStore store, String dateId, Integer old, int mood) {
+        if (old != null) {
+            if (old == mood) return;
+            store.setMood(dateId, mood);
+            store.addToCumulative(dateId, mood - old, 0);
+            return;
+        }
+        DayRow row = follow(store.lastBefore(dateId), dateId, mood);
+        store.insert(row);
+        store.addToCumulative(plusDays(dateId, 1), mood, 1);
+
+        int streak = row.streak;
+        String next = dateId;
+        do {
+            next = plusDays(next, 1);
+        } while (store.setStreak(next, ++streak));
+    }
+
+    // Janela ]before, upTo]: diferença entre duas linhas acumuladas (null = nenhum registo).
+    public static Window window(DayRow upTo, DayRow before) {
+        long sum = (upTo == null ? 0 : upTo.cumSum) - (before == null ? 0 : before.cumSum);
+        int count = (upTo == null ? 0 : upTo.cumCount) - (before == null ? 0 : before.cumCount);
+        return new Window(sum, count);
+    }
+
+    // ============================================================
+    // Secção: Chaves (dateId = yyyy-MM-dd)
+    // ============================================================
+
+    // Semana ISO do dia, ex.: "2025-W01" (a semana 1 pode começar em dezembro).
+    public static String weekKey(String dateId) {
+        LocalDate d = LocalDate.parse(dateId);
+        return String.format(Locale.ROOT, "%04d-W%02d",
+                d.get(IsoFields.WEEK_BASED_YEAR), d.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+    }
+
+    public static String monthKey(String dateId) {
+        return dateId.substring(0, 7);
+    }
+
+    public static String plusDays(String dateId, int days) {
+        return LocalDate.parse(dateId).plusDays(days).toString();
+    }
+}
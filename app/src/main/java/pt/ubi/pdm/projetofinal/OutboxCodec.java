@@ -0,0 +1,262 @@
+package pt.ubi.pdm.projetofinal;
+
+import java.nio.charset.StandardCharsets;
+
+
+// Codec binário dos payloads da outbox (coluna BLOB "payload").
+// Substitui o JSON montado à mão nas Activities e o JSONObject no SyncWorker.
+//
+// Formato (versão 2):
+//   [versão u8][tipo u8][createdAt i64 big-endian][dateId: len varint + UTF-8]
+//   diário:   [texto: len varint + UTF-8]
+//   reflexão: [texto: len varint + UTF-8][chave RTDB: len varint + UTF-8, vazia = sem chave]
+//   humor:    [mood u8]
+//   post:       (dateId = id do post) [texto][autor][uid][anónimo u8]
+//   comentário: (dateId = id do post) [id do comentário][texto][autor]
+// A versão 1 é igual mas sem a chave da reflexão; continua a ser lida (linhas já na outbox).
+// As strings vão como bytes UTF-8 com o comprimento à frente, por isso aspas,
+// barras, quebras de linha e caracteres de controlo não precisam de escape.
+
+public class OutboxCodec {
+
+    public static final int VERSION = 2;
+    private static final int VERSION_1 = 1;
+
+    private static final byte TAG_DIARY = 1;
+    private static final byte TAG_MOOD = 2;
+    private static final byte TAG_REFLECTION = 3;
+    private static final byte TAG_POST = 4;
+    private static final byte TAG_COMMENT = 5;
+
+
+    // Payload já descodificado. "text" só existe em diário/reflexão e "mood" só em humor.
+    // "remoteKey" é a chave push da reflexão/post/comentário no RTDB (null se não houver).
+    // Comunidade: "postId" é o post (nos comentários, o post comentado); "author" em posts e
+    // comentários, "uid"/"anonymous" só em posts.
+    public static class Payload {
+        public final String type;
+        public final String dateId;
+        public final String text;
+        public final int mood;
+        public final long createdAt;
+        public final String remoteKey;
+        public final String postId;
+        public final String author;
+        public final String uid;
+        public final boolean anonymous;
+
+        public Payload(String type, String dateId, String text, int mood, long createdAt, String remoteKey) {
+            this(type, dateId, text, mood, createdAt, remoteKey, null, null, null, false);
+        }
+
+        public Payload(String type, String dateId, String text, int mood, long createdAt, String remoteKey,
+                       String postId, String author, String uid, boolean anonymous) {
+            this.type = type;
+            this.dateId = dateId;
+            this.text = text;
+            this.mood = mood;
+            this.createdAt = createdAt;
+            this.remoteKey = remoteKey;
+            this.postId = postId;
+            this.author = author;
+            this.uid = uid;
+            this.anonymous = anonymous;
+        }
+    }
+
+    // ============================================================
+    // Secção: Encode
+    // ============================================================
+
+    public static byte[] encodeDiary(String dateId, String text, long createdAt) {
+        return encodeText(TAG_DIARY, dateId, text, createdAt, null);
+    }
+
+    // remoteKey: chave push já reservada no RTDB, para o envio ser idempotente (pode ser null).
+    public static byte[] encodeReflection(String dateId, String text, long createdAt, String remoteKey) {
+        return encodeText(TAG_REFLECTION, dateId, text, createdAt, remoteKey == null ? "" : remoteKey);
+    }
+
+    public static byte[] encodeMood(String dateId, int mood, long createdAt) {
+        if (mood < 0 || mood > 255) throw new IllegalArgumentException("mood fora do intervalo: " + mood);
+        byte[] date = utf8(dateId);
+        Writer w = new Writer(10 + varintSize(date.length) + date.length + 1);
+        w.header(TAG_MOOD, createdAt);
+        w.bytes(date);
+        w.u8(mood);
+        return w.buf;
+    }
+
+    // postId: chave push reservada no cliente (reenviar escreve no mesmo nó).
+    public static byte[] encodePost(String postId, String text, String author, String uid,
+                                    boolean anonymous, long createdAt) {
+        byte[] id = utf8(postId);
+        byte[] body = utf8(text == null ? "" : text);
+        byte[] a = utf8(author == null ? "" : author);
+        byte[] u = utf8(uid == null ? "" : uid);
+        Writer w = new Writer(10 + sized(id) + sized(body) + sized(a) + sized(u) + 1);
+        w.header(TAG_POST, createdAt);
+        w.bytes(id);
+        w.bytes(body);
+        w.bytes(a);
+        w.bytes(u);
+        w.u8(anonymous ? 1 : 0);
+        return w.buf;
+    }
+
+    public static byte[] encodeComment(String postId, String commentId, String text, String author, long createdAt) {
+        byte[] post = utf8(postId);
+        byte[] id = utf8(commentId);
+        byte[] body = utf8(text == null ? "" : text);
+        byte[] a = utf8(author == null ? "" : author);
+        Writer w = new Writer(10 + sized(post) + sized(id) + sized(body) + sized(a));
+        w.header(TAG_COMMENT, createdAt);
+        w.bytes(post);
+        w.bytes(id);
+        w.bytes(body);
+        w.bytes(a);
+        return w.buf;
+    }
+
+    // key == null: sem campo de chave (diário)
+    private static byte[] encodeText(byte tag, String dateId, String text, long createdAt, String key) {
+        byte[] date = utf8(dateId);
+        byte[] body = utf8(text == null ? "" : text);
+        byte[] k = key == null ? null : utf8(key);
+        int size = 10 + varintSize(date.length) + date.length + varintSize(body.length) + body.length;
+        if (k != null) size += varintSize(k.length) + k.length;
+        Writer w = new Writer(size);
+        w.header(tag, createdAt);
+        w.bytes(date);
+        w.bytes(body);
+        if (k != null) w.bytes(k);
+        return w.buf;
+    }
+
+    // ============================================================
+    // Secção: Decode
+    // ============================================================
+
+    // Lança IllegalArgumentException se os bytes não forem um payload válido
+    // (versão desconhecida, tipo desconhecido, truncado ou com lixo no fim).
+    public static Payload decode(byte[] data) {
+        if (data == null) throw new IllegalArgumentException("payload vazio");
+        Reader r = new Reader(data);
+        int version = r.u8();
+        if (version != VERSION && version != VERSION_1) throw new IllegalArgumentException("versão desconhecida: " + version);
+        int tag = r.u8();
+        long createdAt = r.i64();
+        String dateId = r.string(); // na comunidade é o id do post
+
+        Payload p;
+        switch (tag) {
+            case TAG_DIARY:
+                p = new Payload(sqlite.OP_UPSERT_DIARY, dateId, r.string(), 0, createdAt, null);
+                break;
+            case TAG_REFLECTION: {
+                String text = r.string();
+                String key = version >= 2 ? r.string() : "";
+                p = new Payload(sqlite.OP_UPSERT_REFLECTION, dateId, text, 0, createdAt, key.isEmpty() ? null : key);
+                break;
+            }
+            case TAG_MOOD:
+                p = new Payload(sqlite.OP_UPSERT_MOOD, dateId, null, r.u8(), createdAt, null);
+                break;
+            case TAG_POST: {
+                String text = r.string();
+                String author = r.string();
+                String uid = r.string();
+                boolean anonymous = r.u8() != 0;
+                p = new Payload(sqlite.OP_CREATE_POST, null, text, 0, createdAt, dateId,
+                        dateId, author, uid, anonymous);
+                break;
+            }
+            case TAG_COMMENT: {
+                String commentId = r.string();
+                String text = r.string();
+                String author = r.string();
+                p = new Payload(sqlite.OP_CREATE_COMMENT, null, text, 0, createdAt, commentId,
+                        dateId, author, null, false);
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("tipo desconhecido: " + tag);
+        }
+        if (r.pos != data.length) throw new IllegalArgumentException("bytes a mais no payload");
+        return p;
+    }
+
+    // ============================================================
+    // Secção: Helpers
+    // ============================================================
+
+    private static byte[] utf8(String s) {
+        if (s == null) throw new IllegalArgumentException("dateId em falta");
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Tamanho de uma string já em UTF-8 com o comprimento à frente
+    private static int sized(byte[] b) {
+        return varintSize(b.length) + b.length;
+    }
+
+    private static int varintSize(int v) {
+        int n = 1;
+        while ((v & ~0x7F) != 0) { v >>>= 7; n++; }
+        return n;
+    }
+
+    // Escritor sobre um array já com o tamanho exato (sem realocações).
+    private static class Writer {
+        final byte[] buf;
+        int pos;
+        Writer(int size) { buf = new byte[size]; }
+
+        void header(byte tag, long createdAt) {
+            u8(VERSION);
+            u8(tag);
+            for (int shift = 56; shift >= 0; shift -= 8) buf[pos++] = (byte) (createdAt >>> shift);
+        }
+        void u8(int v) { buf[pos++] = (byte) v; }
+        void bytes(byte[] b) {
+            int len = b.length;
+            while ((len & ~0x7F) != 0) { buf[pos++] = (byte) ((len & 0x7F) | 0x80); len >>>= 7; }
+            buf[pos++] = (byte) len;
+            System.arraycopy(b, 0, buf, pos, b.length);
+            pos += b.length;
+        }
+    }
+
+    private static class Reader {
+        final byte[] buf;
+        int pos;
+        Reader(byte[] b) { buf = b; }
+
+        private void need(int n) {
+            if (n < 0 || buf.length - pos < n) throw new IllegalArgumentException("payload truncado");
+        }
+        int u8() {
+            need(1);
+            return buf[pos++] & 0xFF;
+        }
+        long i64() {
+            need(8);
+            long v = 0;
+            for (int i = 0; i < 8; i++) v = (v << 8) | (buf[pos++] & 0xFF);
+            return v;
+        }
+        String string() {
+            int len = 0;
+            for (int shift = 0; ; shift += 7) {
+                if (shift > 28) throw new IllegalArgumentException("comprimento inválido");
+                int b = u8();
+                len |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) break;
+            }
+            need(len);
+            String s = new String(buf, pos, len, StandardCharsets.UTF_8);
+            pos += len;
+            return s;
+        }
+    }
+}
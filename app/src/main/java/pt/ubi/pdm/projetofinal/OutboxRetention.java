@@ -0,0 +1,57 @@
+package pt.ubi.pdm.projetofinal;
+
+import android.util.Log;
+
+
+// Limpeza da outbox: apaga as operações já enviadas (SENT) com mais de uma certa idade.
+// Corre no SyncWorker, em lotes limitados, e no fim devolve espaço ao sistema com
+// incremental_vacuum. Assim a tabela e os índices não crescem para sempre.
+
+public class OutboxRetention {
+
+    private static final String TAG = "OutboxRetention";
+
+    // Idade mínima de uma linha SENT antes de ser apagada
+    public static final long DEFAULT_RETENTION_MS = 7L * 24 * 60 * 60 * 1000;
+    // Linhas apagadas por lote / lotes por execução (evita transações longas)
+    private static final int BATCH_SIZE = 200;
+    private static final int MAX_BATCHES = 10;
+    // Páginas devolvidas por execução de incremental_vacuum
+    private static final int VACUUM_PAGES = 256;
+
+
+    // Resultado de uma execução: tamanho da outbox e da BD antes/depois.
+    public static class Report {
+        public int rowsBefore, rowsAfter, purged;
+        public long bytesBefore, bytesAfter;
+
+        @Override public String toString() {
+            return "outbox " + rowsBefore + " → " + rowsAfter + " linhas (" + purged + " apagadas), " +
+                    "BD " + bytesBefore + " → " + bytesAfter + " bytes";
+        }
+    }
+
+
+    // Apaga as linhas SENT mais antigas do que retentionMs e faz vacuum incremental.
+    // - Deve ser chamado fora da main thread (pode fazer um VACUUM completo na primeira vez).
+    public static Report run(sqlite db, long retentionMs) {
+        Report r = new Report();
+        r.rowsBefore = db.countOutboxRows();
+        r.bytesBefore = db.databaseSizeBytes();
+
+        long cutoff = System.currentTimeMillis() - retentionMs;
+        for (int i = 0; i < MAX_BATCHES; i++) {
+            int n = db.purgeSent(cutoff, BATCH_SIZE);
+            r.purged += n;
+            if (n < BATCH_SIZE) break;
+        }
+
+        db.ensureIncrementalAutoVacuum();
+        if (db.freePages() > 0) db.incrementalVacuum(VACUUM_PAGES);
+
+        r.rowsAfter = db.countOutboxRows();
+        r.bytesAfter = db.databaseSizeBytes();
+        Log.i(TAG, r.toString());
+        return r;
+    }
+}
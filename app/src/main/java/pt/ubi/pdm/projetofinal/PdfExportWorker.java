@@ -0,0 +1,273 @@
+package pt.ubi.pdm.projetofinal;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+import androidx.core.content.FileProvider;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.Query;
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+
+// Exportação do diário/reflexões para PDF em background (WorkManager).
+// - Junta ao SQLite as reflexões que só existem no Firebase (se houver ligação).
+// - Tudo é limitado ao intervalo pedido: a query ao Firebase usa startAt/endAt nas chaves dos dias
+//   e o SQLite é lido por blocos de dias (uma query por tabela e bloco, não uma por dia).
+// - Mostra o progresso numa notificação com botão "Cancelar" (cancela o trabalho no WorkManager)
+//   e publica-o também como progress do WorkInfo, para a DiaryActivity.
+// - No fim, a notificação abre o PDF; o caminho vai no output (KEY_FILE).
+
+public class PdfExportWorker extends Worker {
+
+    // Intervalo de dias (yyyy-MM-dd, inclusive); sem valores = tudo
+    public static final String KEY_FROM_DAY = "from_day";
+    public static final String KEY_TO_DAY = "to_day";
+    // Output/progresso
+    public static final String KEY_FILE = "file";
+    public static final String KEY_DONE = "done";
+    public static final String KEY_TOTAL = "total";
+
+    public static final String UNIQUE_NAME = "oa_pdf_export";
+    private static final String CHANNEL_ID = "exports";
+    private static final int NOTIF_ID = 3002;
+    // Janela de dias considerada (como antes: último ano de entradas)
+    private static final int MAX_DAYS = 365;
+    // Dias lidos do SQLite de cada vez enquanto o PDF é desenhado
+    private static final int READ_CHUNK_DAYS = 31;
+    private static final long REMOTE_TIMEOUT_S = 30;
+
+    private int lastPercent = -1;
+
+    public PdfExportWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    // Agenda uma exportação (substitui uma que ainda esteja a correr). Devolve o id do trabalho.
+    public static UUID enqueue(Context ctx, @Nullable String fromDay, @Nullable String toDay) {
+        Data.Builder in = new Data.Builder();
+        if (fromDay != null) in.putString(KEY_FROM_DAY, fromDay);
+        if (toDay != null) in.putString(KEY_TO_DAY, toDay);
+        OneTimeWorkRequest req = new OneTimeWorkRequest.Builder(PdfExportWorker.class)
+                .setInputData(in.build())
+                .build();
+        WorkManager.getInstance(ctx).enqueueUniqueWork(UNIQUE_NAME, ExistingWorkPolicy.REPLACE, req);
+        return req.getId();
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        if (user == null) return Result.failure();
+
+        sqlite db = LocalRepository.get(getApplicationContext()).helper();
+        String fromDay = getInputData().getString(KEY_FROM_DAY);
+        String toDay = getInputData().getString(KEY_TO_DAY);
+
+        createChannel();
+        mirrorRemoteReflections(db, user.getUid(), fromDay, toDay);
+        if (isStopped()) return Result.failure();
+
+        List<String> dates = collectDates(db, fromDay, toDay);
+        if (dates.isEmpty()) {
+            NotificationManagerCompat.from(getApplicationContext()).cancel(NOTIF_ID);
+            return Result.success(new Data.Builder().putInt(KEY_TOTAL, 0).build());
+        }
+
+        File dir = getApplicationContext().getExternalFilesDir("Exports");
+        if (dir == null) return Result.failure();
+        if (!dir.exists()) dir.mkdirs();
+        File out = new File(dir, "diario_" +
+                new SimpleDateFormat("yyyyMMdd_HHmm", Locale.getDefault()).format(new Date()) + ".pdf");
+
+        try {
+            boolean finished = PdfExporter.export(out, source(db, dates), new PdfExporter.Progress() {
+                @Override public void onDay(int done, int total) { reportProgress(done, total); }
+                @Override public boolean isCancelled() { return isStopped(); }
+            });
+            if (!finished) {
+                NotificationManagerCompat.from(getApplicationContext()).cancel(NOTIF_ID);
+                return Result.failure();
+            }
+        } catch (IOException | RuntimeException e) {
+            notifyFinished(null);
+            return Result.failure();
+        }
+
+        notifyFinished(out);
+        return Result.success(new Data.Builder()
+                .putString(KEY_FILE, out.getAbsolutePath())
+                .putInt(KEY_TOTAL, dates.size())
+                .build());
+    }
+
+    // ============================================================
+    // Secção: Dados
+    // ============================================================
+
+    // Reflexões do intervalo que só existem no Firebase passam para o SQLite (o índice do contentHash
+    // ignora as repetidas). Só é pedido o intervalo (as chaves são os dias yyyy-MM-dd); sem intervalo,
+    // os últimos MAX_DAYS dias com reflexões. Sem ligação exporta-se só o que já está no dispositivo.
+    // Não mexe nos cursores de sincronização: é uma leitura pontual para a exportação.
+    private void mirrorRemoteReflections(sqlite db, String uid, @Nullable String fromDay, @Nullable String toDay) {
+        Query q = FirebaseDatabase.getInstance()
+                .getReference("users").child(uid).child("reflections").orderByKey();
+        if (fromDay != null) q = q.startAt(fromDay);
+        if (toDay != null) q = q.endAt(toDay);
+        if (fromDay == null && toDay == null) q = q.limitToLast(MAX_DAYS);
+
+        DataSnapshot snap;
+        try {
+            snap = Tasks.await(q.get(), REMOTE_TIMEOUT_S, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            return;
+        }
+        List<sqlite.Reflection> list = new ArrayList<>();
+        for (DataSnapshot day : snap.getChildren()) {
+            String dayKey = day.getKey();
+            if (dayKey == null) continue;
+            for (DataSnapshot e : day.getChildren()) {
+                String text = e.child("text").getValue(String.class);
+                Long createdAt = e.child("createdAt").getValue(Long.class);
+                if (text == null || text.trim().isEmpty()) continue;
+                sqlite.Reflection r = new sqlite.Reflection();
+                r.dateId = dayKey;
+                r.text = text.trim();
+                r.updatedAt = createdAt != null ? createdAt : System.currentTimeMillis();
+                r.remoteKey = e.getKey();
+                list.add(r);
+            }
+        }
+        db.upsertReflections(list);
+    }
+
+    // Dias com diário ou reflexões dentro do intervalo (no máximo os MAX_DAYS mais recentes), ASC.
+    private static List<String> collectDates(sqlite db, @Nullable String fromDay, @Nullable String toDay) {
+        List<String> dates = db.getEntryDaysBetween(fromDay, toDay, MAX_DAYS);
+        Collections.reverse(dates);
+        return dates;
+    }
+
+    // Conteúdo lido por blocos de READ_CHUNK_DAYS dias, à medida que o PdfExporter avança
+    // (só um bloco de texto em memória de cada vez).
+    private static PdfExporter.Source source(sqlite db, List<String> dates) {
+        return new PdfExporter.Source() {
+            private int chunkEnd = 0;   // índice (exclusivo) do último dia carregado
+            private Map<String, String> diary = Collections.emptyMap();
+            private Map<String, List<String>> reflections = Collections.emptyMap();
+
+            @Override public List<String> dates() { return dates; }
+
+            @Override public String diary(String dateId) {
+                load(dateId);
+                String t = diary.get(dateId);
+                return t == null ? null : t.trim();
+            }
+
+            @Override public List<String> reflections(String dateId) {
+                load(dateId);
+                List<String> list = reflections.get(dateId);
+                return list != null ? list : Collections.emptyList();
+            }
+
+            // Carrega o bloco que começa em dateId, se ainda não estiver carregado.
+            private void load(String dateId) {
+                if (diary.containsKey(dateId) || reflections.containsKey(dateId)) return;
+                int from = dates.indexOf(dateId);
+                if (from < 0 || from < chunkEnd) return;
+                chunkEnd = Math.min(dates.size(), from + READ_CHUNK_DAYS);
+                String last = dates.get(chunkEnd - 1);
+                Map<String, String> d = new HashMap<>();
+                for (sqlite.DiaryEntry e : db.getDiaryBetween(dateId, last)) d.put(e.dateId, e.text);
+                diary = d;
+                reflections = db.getReflectionsBetween(dateId, last);
+            }
+        };
+    }
+
+    // ============================================================
+    // Secção: Progresso e notificações
+    // ============================================================
+
+    // Só atualiza quando a percentagem muda (evita centenas de notificações por segundo).
+    private void reportProgress(int done, int total) {
+        int percent = total == 0 ? 100 : done * 100 / total;
+        if (percent == lastPercent) return;
+        lastPercent = percent;
+
+        setProgressAsync(new Data.Builder().putInt(KEY_DONE, done).putInt(KEY_TOTAL, total).build());
+
+        PendingIntent cancel = WorkManager.getInstance(getApplicationContext()).createCancelPendingIntent(getId());
+        NotificationCompat.Builder b = new NotificationCompat.Builder(getApplicationContext(), CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_notification)
+                .setContentTitle("A exportar o diário")
+                .setContentText(done + " de " + total + " dias")
+                .setProgress(100, percent, false)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .addAction(0, "Cancelar", cancel);
+        notify(b);
+    }
+
+    // file == null → falhou.
+    private void notifyFinished(@Nullable File file) {
+        Context ctx = getApplicationContext();
+        NotificationCompat.Builder b = new NotificationCompat.Builder(ctx, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_notification)
+                .setAutoCancel(true);
+        if (file == null) {
+            b.setContentTitle("Não foi possível exportar o diário");
+        } else {
+            Uri uri = FileProvider.getUriForFile(ctx, ctx.getPackageName() + ".fileprovider", file);
+            Intent view = new Intent(Intent.ACTION_VIEW)
+                    .setDataAndType(uri, "application/pdf")
+                    .addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_ACTIVITY_NEW_TASK);
+            PendingIntent open = PendingIntent.getActivity(ctx, NOTIF_ID, view,
+                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+            b.setContentTitle("Diário exportado")
+                    .setContentText(file.getName())
+                    .setContentIntent(open);
+        }
+        notify(b);
+    }
+
+    private void notify(NotificationCompat.Builder b) {
+        Context ctx = getApplicationContext();
+        if (!Reminders.hasPostNotifPermission(ctx)) return;
+        NotificationManagerCompat.from(ctx).notify(NOTIF_ID, b.build());
+    }
+
+    private void createChannel() {
+        NotificationChannel ch = new NotificationChannel(
+                CHANNEL_ID, "Exportações", NotificationManager.IMPORTANCE_LOW);
+        getApplicationContext().getSystemService(NotificationManager.class).createNotificationChannel(ch);
+    }
+}
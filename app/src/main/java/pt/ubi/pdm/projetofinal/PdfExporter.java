@@ -0,0 +1,191 @@
+package pt.ubi.pdm.projetofinal;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.graphics.pdf.PdfDocument;
+import androidx.annotation.Nullable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+
+// Gera o PDF do diário e reflexões a partir de uma fonte lida dia a dia.
+// - Os dias são percorridos por ordem e o conteúdo de cada um só é lido quando vai ser desenhado
+//   (o histórico nunca está todo em memória como texto).
+// - Cada página é fechada assim que enche (finishPage): só a página atual tem Canvas aberto.
+// - O texto é partido em linhas pelo PdfTextLayout e a quebra de página é decidida linha a linha,
+//   por isso entradas longas continuam na página seguinte em vez de saírem da margem.
+// - Escreve para um .tmp e só renomeia no fim: um cancelamento não deixa PDFs a meio.
+// Corre numa thread de fundo (PdfExportWorker).
+
+public class PdfExporter {
+
+    // Conteúdo a exportar. dates() vem por ordem crescente (yyyy-MM-dd).
+    public interface Source {
+        List<String> dates();
+        @Nullable String diary(String dateId);
+        List<String> reflections(String dateId);
+    }
+
+    // Chamado depois de cada dia; isCancelled() é consultado entre dias.
+    public interface Progress {
+        void onDay(int done, int total);
+        boolean isCancelled();
+    }
+
+    private static final int PAGE_W = 595;   // ~A4 a 72dpi
+    private static final int PAGE_H = 842;
+    private static final int MARGIN = 40;
+    private static final int LINE_H = 18;
+    private static final int MAX_WIDTH = PAGE_W - MARGIN * 2;
+    private static final int PARAGRAPH_GAP = 6;
+
+    private static final Typeface BOLD = Typeface.create(Typeface.DEFAULT, Typeface.BOLD);
+
+    // Criados uma vez por exportação (não por dia nem por linha)
+    private final Paint title = new Paint();
+    private final Paint h2 = new Paint();
+    private final Paint body = new Paint();
+    private final PdfTextLayout bodyLayout;
+    private final SimpleDateFormat isoDay = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
+    private final SimpleDateFormat uiDay = new SimpleDateFormat("dd/MM/yyyy", Locale.getDefault());
+
+    private PdfDocument doc;
+    private PdfDocument.Page page;
+    private Canvas canvas;
+    private int pageNum = 1;
+    // Posição vertical na página atual
+    private int y;
+
+    private PdfExporter() {
+        title.setTypeface(BOLD);
+        title.setTextSize(18f);
+        h2.setTypeface(BOLD);
+        h2.setTextSize(14f);
+        body.setTextSize(12f);
+        bodyLayout = new PdfTextLayout(body::measureText);
+    }
+
+    // Gera o PDF em "out". Devolve false se foi cancelado (nenhum ficheiro fica escrito).
+    public static boolean export(File out, Source source, Progress progress) throws IOException {
+        return new PdfExporter().run(out, source, progress);
+    }
+
+    private boolean run(File out, Source source, Progress progress) throws IOException {
+        List<String> dates = source.dates();
+        File tmp = new File(out.getParentFile(), out.getName() + ".tmp");
+        doc = new PdfDocument();
+        try {
+            // Página de capa
+            newPage();
+            y = MARGIN + 40;
+            canvas.drawText("Exportação do Diário", MARGIN, y, title);
+            y += LINE_H * 2;
+            canvas.drawText("Gerado em: " +
+                            new SimpleDateFormat("dd/MM/yyyy HH:mm", Locale.getDefault()).format(new Date()),
+                    MARGIN, y, body);
+
+            // Páginas com conteúdo
+            nextPage();
+            int done = 0;
+            for (String d : dates) {
+                if (progress.isCancelled()) return false;
+                drawDay(d, source.diary(d), joinReflections(source.reflections(d)));
+                progress.onDay(++done, dates.size());
+            }
+            doc.finishPage(page);
+            page = null;
+
+            if (progress.isCancelled()) return false;
+            try (FileOutputStream fos = new FileOutputStream(tmp)) {
+                doc.writeTo(fos);
+            }
+            if (!tmp.renameTo(out)) throw new IOException("não foi possível gravar " + out.getName());
+            return true;
+        } finally {
+            if (page != null) doc.finishPage(page);
+            doc.close();
+            tmp.delete();
+        }
+    }
+
+    // ============================================================
+    // Secção: Desenho
+    // ============================================================
+
+    private void drawDay(String d, @Nullable String diaryText, @Nullable String reflText) {
+        // Título com data (com espaço para pelo menos o início da secção seguinte)
+        ensureSpace(LINE_H * 3);
+        canvas.drawText(formatDateUi(d), MARGIN, y, title);
+        y += LINE_H + 6;
+
+        // Secção: Texto do diário
+        ensureSpace(LINE_H * 2);
+        canvas.drawText("Texto", MARGIN, y, h2);
+        y += LINE_H;
+        drawParagraphs(diaryText);
+        y += LINE_H * 4;
+
+        // Secção: Reflexões
+        ensureSpace(LINE_H * 2);
+        canvas.drawText("Reflexões", MARGIN, y, h2);
+        y += LINE_H;
+        drawParagraphs(reflText);
+        y += LINE_H * 4;
+    }
+
+    // Texto em linhas (PdfTextLayout); cada linha que já não cabe passa para a página seguinte.
+    private void drawParagraphs(@Nullable String text) {
+        if (text == null || text.trim().isEmpty()) return;
+        bodyLayout.layout(text, MAX_WIDTH, (t, start, end) -> {
+            if (y + LINE_H > PAGE_H - MARGIN) nextPage();
+            canvas.drawText(t, start, end, MARGIN, y + LINE_H, body);
+            y += LINE_H;
+        }, () -> y += PARAGRAPH_GAP);
+    }
+
+    // Muda de página se faltar espaço para "needed" a partir da posição atual.
+    private void ensureSpace(int needed) {
+        if (y + needed > PAGE_H - MARGIN) nextPage();
+    }
+
+    private void nextPage() {
+        doc.finishPage(page);
+        newPage();
+        y = MARGIN;
+    }
+
+    private void newPage() {
+        page = doc.startPage(new PdfDocument.PageInfo.Builder(PAGE_W, PAGE_H, pageNum++).create());
+        canvas = page.getCanvas();
+    }
+
+    // ============================================================
+    // Secção: Helpers
+    // ============================================================
+
+    // Reflexões de um dia como lista com marcadores, separadas por linha em branco.
+    @Nullable
+    private static String joinReflections(List<String> reflections) {
+        StringBuilder sb = new StringBuilder();
+        for (String t : reflections) {
+            if (t == null || t.trim().isEmpty()) continue;
+            if (sb.length() > 0) sb.append("\n\n");
+            sb.append("• ").append(t.trim());
+        }
+        return sb.length() > 0 ? sb.toString() : null;
+    }
+
+    private String formatDateUi(String dateId) {
+        try {
+            Date d = isoDay.parse(dateId);
+            return uiDay.format(Objects.requireNonNull(d));
+        } catch (Exception e) { return dateId; }
+    }
+}
@@ -0,0 +1,115 @@
+package pt.ubi.pdm.projetofinal;
+
+
+// Quebra de linhas do texto do PDF (diário e reflexões).
+// - Cada palavra e cada espaço entre palavras é medido uma única vez, por offsets no texto
+//   original: não se criam Strings por palavra nem por linha candidata.
+// - Palavras mais largas do que a linha são partidas pelo maior prefixo que cabe (pesquisa binária).
+// - As linhas são entregues como (início, fim) no texto; quem desenha decide a página de cada linha,
+//   por isso um parágrafo longo continua na página seguinte em vez de ser cortado.
+// Não depende de classes Android (a medição vem do Measurer), por isso corre em testes JVM.
+
+public final class PdfTextLayout {
+
+    // Largura de text[start, end) (no Android: Paint.measureText com os mesmos offsets).
+    public interface Measurer {
+        float measure(CharSequence text, int start, int end);
+    }
+
+    // Recebe cada linha como intervalo [start, end) do texto (sem espaços nas pontas).
+    public interface LineSink {
+        void line(CharSequence text, int start, int end);
+    }
+
+    private final Measurer measurer;
+
+    public PdfTextLayout(Measurer measurer) {
+        this.measurer = measurer;
+    }
+
+    // Parte um texto em parágrafos ('\n') e cada parágrafo em linhas até maxWidth.
+    // onParagraphEnd (pode ser null) corre depois de cada parágrafo. Devolve o número de linhas.
+    public int layout(CharSequence text, float maxWidth, LineSink sink, Runnable onParagraphEnd) {
+        int lines = 0;
+        int start = 0;
+        int len = text.length();
+        while (start < len) {
+            int end = start;
+            while (end < len && text.charAt(end) != '\n') end++;
+            lines += breakParagraph(text, start, end, maxWidth, sink);
+            if (onParagraphEnd != null) onParagraphEnd.run();
+            start = end + 1;
+        }
+        return lines;
+    }
+
+    // Quebra gulosa de um parágrafo text[start, end): junta palavras enquanto a soma das larguras cabe.
+    public int breakParagraph(CharSequence text, int start, int end, float maxWidth, LineSink sink) {
+        int lines = 0;
+        int lineStart = -1;   // início da linha atual (-1 = vazia)
+        int lineEnd = -1;     // fim da última palavra da linha
+        float lineWidth = 0f;
+
+        int i = start;
+        while (i < end) {
+            // Próxima palavra [ws, we)
+            int ws = i;
+            while (ws < end && Character.isWhitespace(text.charAt(ws))) ws++;
+            if (ws >= end) break;
+            int we = ws;
+            while (we < end && !Character.isWhitespace(text.charAt(we))) we++;
+            i = we;
+
+            float wordWidth = measurer.measure(text, ws, we);
+            if (lineStart < 0) {
+                if (wordWidth > maxWidth) {
+                    lines += breakLongWord(text, ws, we, maxWidth, sink);
+                    continue;
+                }
+                lineStart = ws;
+                lineEnd = we;
+                lineWidth = wordWidth;
+                continue;
+            }
+
+            float gap = measurer.measure(text, lineEnd, ws);
+            if (lineWidth + gap + wordWidth <= maxWidth) {
+                lineEnd = we;
+                lineWidth += gap + wordWidth;
+            } else {
+                sink.line(text, lineStart, lineEnd);
+                lines++;
+                if (wordWidth > maxWidth) {
+                    lineStart = -1;
+                    lines += breakLongWord(text, ws, we, maxWidth, sink);
+                } else {
+                    lineStart = ws;
+                    lineEnd = we;
+                    lineWidth = wordWidth;
+                }
+            }
+        }
+        if (lineStart >= 0) {
+            sink.line(text, lineStart, lineEnd);
+            lines++;
+        }
+        return lines;
+    }
+
+    // Palavra sem espaços mais larga do que a linha (ex.: URL): partida em pedaços que cabem.
+    private int breakLongWord(CharSequence text, int start, int end, float maxWidth, LineSink sink) {
+        int lines = 0;
+        while (start < end) {
+            int lo = start + 1, hi = end;   // procura o maior fim com largura <= maxWidth
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (measurer.measure(text, start, mid) <= maxWidth) lo = mid;
+                else hi = mid - 1;
+            }
+            sink.line(text, start, lo);     // pelo menos 1 carácter, mesmo que não caiba
+            lines++;
+            start = lo;
+        }
+        return lines;
+    }
+}
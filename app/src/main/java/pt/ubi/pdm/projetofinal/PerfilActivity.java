@@ -28,7 +28,6 @@ import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.database.*;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.text.SimpleDateFormat;
 import java.util.*;
@@ -36,7 +35,7 @@ import java.util.*;
 
 // Classe responsável pela edição do perfil do utilizador.
 // Permite alterar nome, data de nascimento, foto de perfil, palavra-passe e fazer logout.
-// Suporta sincronização com Firebase e armazenamento local de avatar.
+// Suporta sincronização com Firebase; o avatar vai para o Firebase Storage (AvatarStore).
 
 
 public class PerfilActivity extends AppCompatActivity {
@@ -47,7 +46,7 @@ public class PerfilActivity extends AppCompatActivity {
     private DatabaseReference profileRef;
     private String uid;
     private Uri tempCameraUri = null;
-    private File localAvatarFile; // /data/data/<app>/files/avatar_<uid>.jpg
+    private AvatarStore avatars;
 
     // ============================================================
     // Secção: Galeria
@@ -108,12 +107,10 @@ public class PerfilActivity extends AppCompatActivity {
         if (user == null) { finish(); return; }
         uid = user.getUid();
 
-        profileRef = FirebaseDatabase.getInstance()
-                .getReference("users").child(uid).child("profile");
-        profileRef.keepSynced(true); //offline sync
+        profileRef = DataHub.get(this).userRef(uid, DataHub.NODE_PROFILE); //offline sync (keepSynced no DataHub)
 
-        // Avatar local por utilizador
-        localAvatarFile = new File(getFilesDir(), "avatar_" + uid + ".jpg");
+        // Avatar por hash (cache local + Storage)
+        avatars = new AvatarStore(this);
 
         //carregar dados/foto ao abrir
         loadProfile();
@@ -124,36 +121,26 @@ public class PerfilActivity extends AppCompatActivity {
     // ============================================================
 
     // Carrega os dados do perfil do Firebase (nome, data de nascimento, foto).
-    // Dá prioridade à foto local, depois à foto em Base64, e por fim usa um ícone por defeito.
+    // A foto vem do AvatarStore (cache local pelo photoHash; photoB64 só em perfis antigos),
+    // e sem foto usa um ícone por defeito.
 
     private void loadProfile() {
         profileRef.addListenerForSingleValueEvent(new ValueEventListener() {
             @Override public void onDataChange(@NonNull DataSnapshot snap) {
                 String name     = snap.child("displayName").getValue(String.class);
                 String dobIso   = snap.child("dob").getValue(String.class);
+                String photoHash = snap.child("photoHash").getValue(String.class);
                 String photoB64 = snap.child("photoB64").getValue(String.class);
 
                 if (!TextUtils.isEmpty(name)) etName.setText(name);
                 if (!TextUtils.isEmpty(dobIso)) etDob.setText(isoToUi(dobIso));
 
-                // Foto local > Base64 > default
-                if (localAvatarFile.exists()) {
-                    Bitmap bmp = BitmapFactory.decodeFile(localAvatarFile.getAbsolutePath());
-                    if (bmp != null) {
-                        imgAvatar.setScaleType(ImageView.ScaleType.CENTER_CROP);
-                        imgAvatar.setImageBitmap(bmp);
-                    }
-                } else if (!TextUtils.isEmpty(photoB64)) {
-                    Bitmap bmp = base64ToBitmap(photoB64);
-                    if (bmp != null) {
-                        imgAvatar.setScaleType(ImageView.ScaleType.CENTER_CROP);
-                        imgAvatar.setImageBitmap(bmp);
-                        saveBitmapToFile(bmp, localAvatarFile, 90);
-                    }
-                } else {
+                // Foto (cache/Storage/Base64 antigo) > default
+                // (decode em background e cache em memória partilhada com o ecrã inicial)
+                avatars.resolve(uid, photoHash, photoB64, file -> {
                     imgAvatar.setScaleType(ImageView.ScaleType.CENTER_CROP);
-                    imgAvatar.setImageResource(android.R.drawable.ic_menu_myplaces);
-                }
+                    AvatarLoader.get().load(file, imgAvatar, android.R.drawable.ic_menu_myplaces);
+                });
             }
             @Override public void onCancelled(@NonNull DatabaseError error) {}
         });
@@ -257,34 +244,31 @@ public class PerfilActivity extends AppCompatActivity {
     }
 
     // Processa a imagem selecionada ou capturada:
-    // - Redimensiona, mostra na UI, guarda localmente e envia miniatura para o Firebase.
+    // - Redimensiona, mostra na UI e envia a miniatura (JPEG 512px) pelo AvatarStore.
 
     private void handleNewPhotoFromUri(@NonNull Uri uri) {
         Bitmap bmp = decodeDownsample(uri, 2048);
         if (bmp == null) { Toast.makeText(this, "Imagem inválida.", Toast.LENGTH_SHORT).show(); return; }
 
-        // Mostrar e guardar local
+        AvatarLoader.get().cancel(imgAvatar);
         imgAvatar.setScaleType(ImageView.ScaleType.CENTER_CROP);
         imgAvatar.setImageBitmap(bmp);
-        saveBitmapToFile(bmp, localAvatarFile, 90);
 
-        // Miniatura para RTDB
-        Bitmap tiny = scaleMax(bmp, 512);
-        String b64 = bitmapToBase64(tiny, 85);
-        Map<String,Object> data = new HashMap<>();
-        data.put("photoB64", b64);
-        data.put("photoUpdatedAt", ServerValue.TIMESTAMP);
-        profileRef.updateChildren(data);
+        // Miniatura: cache local + Storage; o perfil guarda só o hash
+        byte[] jpeg = bitmapToJpeg(scaleMax(bmp, 512), 85);
+        avatars.upload(uid, jpeg, hash -> {
+            if (hash == null) {
+                Toast.makeText(this, "Foto guardada neste dispositivo; falhou o envio.", Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     // Remove a foto de perfil local e do Firebase.
     private void removeAvatar() {
-        if (localAvatarFile.exists()) localAvatarFile.delete();
+        avatars.remove(uid);
+        AvatarLoader.get().cancel(imgAvatar);
         imgAvatar.setScaleType(ImageView.ScaleType.CENTER_CROP);
         imgAvatar.setImageResource(android.R.drawable.ic_menu_myplaces);
-        Map<String,Object> upd = new HashMap<>();
-        upd.put("photoB64", null);
-        profileRef.updateChildren(upd);
         Toast.makeText(this, "Foto removida.", Toast.LENGTH_SHORT).show();
     }
 
@@ -389,7 +373,7 @@ public class PerfilActivity extends AppCompatActivity {
     // Secção: Helpers
     // ============================================================
 
-    // Funções auxiliares para validação de campos, manipulação de imagens e conversões Base64.
+    // Funções auxiliares para validação de campos e manipulação de imagens.
     private String val(TextInputEditText et) {
         return et.getText() == null ? "" : et.getText().toString().trim();
     }
@@ -425,22 +409,9 @@ public class PerfilActivity extends AppCompatActivity {
         return Bitmap.createScaledBitmap(src, nw, nh, true);
     }
 
-    private void saveBitmapToFile(Bitmap bmp, File file, int qualityJpeg) {
-        try (FileOutputStream out = new FileOutputStream(file)) {
-            bmp.compress(Bitmap.CompressFormat.JPEG, qualityJpeg, out);
-        } catch (Exception ignored) {}
-    }
-
-    private String bitmapToBase64(Bitmap bmp, int qualityJpeg) {
+    private byte[] bitmapToJpeg(Bitmap bmp, int qualityJpeg) {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
         bmp.compress(Bitmap.CompressFormat.JPEG, qualityJpeg, bos);
-        return android.util.Base64.encodeToString(bos.toByteArray(), android.util.Base64.NO_WRAP);
-    }
-
-    private Bitmap base64ToBitmap(String b64) {
-        try {
-            byte[] data = android.util.Base64.decode(b64, android.util.Base64.DEFAULT);
-            return BitmapFactory.decodeByteArray(data, 0, data.length);
-        } catch (Exception e) { return null; }
+        return bos.toByteArray();
     }
 }
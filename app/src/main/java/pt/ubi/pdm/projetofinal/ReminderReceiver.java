@@ -11,16 +11,24 @@ import androidx.core.app.NotificationManagerCompat;
 
 // Classe responsável por receber e processar os alertas agendados.
 // Quando o alarme dispara, esta classe cria e mostra uma notificação ao utilizador
+// (se entretanto houve interação, o InactivityTracker tem um prazo mais tarde e o alarme é só adiado)
 
 public class ReminderReceiver extends BroadcastReceiver {
     @Override
 
     // Método chamado automaticamente quando o alarme é disparado.
+    // - Se o utilizador interagiu depois de o alarme ter sido agendado, reagenda para o novo prazo.
     // - Cria uma notificação com título, texto e ícone.
     // - Verifica se a permissão POST_NOTIFICATIONS foi concedida.
     // - Se sim, envia a notificação com prioridade alta
 
     public void onReceive(Context ctx, Intent intent) {
+        long due = InactivityTracker.dueAt(ctx);
+        if (InactivityTracker.firedEarly(due)) {
+            Reminders.scheduleInactivityAt(ctx, due);
+            return;
+        }
+
         NotificationCompat.Builder b = new NotificationCompat.Builder(ctx, "reminders")
                 .setSmallIcon(R.drawable.ic_notification)
                 .setContentTitle("Está na hora!")
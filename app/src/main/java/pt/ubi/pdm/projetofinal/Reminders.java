@@ -40,19 +40,20 @@ public class Reminders {
     }
 
 
-    // Agenda um alerta de inatividade para ser disparado após um número de horas.
-    // Usa AlarmManager com setExactAndAllowWhileIdle para garantir precisão mesmo em modo de economia de energia.
-    public static void scheduleInactivityAfterHours(Context ctx, int hours) {
-        cancelInactivity(ctx); // evita duplicados
-        long triggerAt = System.currentTimeMillis() + hours * 60L * 60L * 1000L;
-
+    // Agenda (ou move) o alerta de inatividade para triggerAt.
+    // O mesmo PendingIntent substitui o alarme anterior, por isso não é preciso cancelar antes.
+    // Usa setExactAndAllowWhileIdle para garantir precisão mesmo em modo de economia de energia;
+    // sem permissão de alarmes exatos usa setAndAllowWhileIdle (o ReminderReceiver tolera atrasos).
+    public static void scheduleInactivityAt(Context ctx, long triggerAt) {
         Intent i = new Intent(ctx, ReminderReceiver.class);
         PendingIntent pi = PendingIntent.getBroadcast(
                 ctx, REQ_CODE, i,
                 PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
 
         AlarmManager am = (AlarmManager) ctx.getSystemService(Context.ALARM_SERVICE);
-        if (Build.VERSION.SDK_INT >= 23) {
+        if (Build.VERSION.SDK_INT >= 31 && !am.canScheduleExactAlarms()) {
+            am.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAt, pi);
+        } else if (Build.VERSION.SDK_INT >= 23) {
             am.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAt, pi);
         } else {
             am.setExact(AlarmManager.RTC_WAKEUP, triggerAt, pi);
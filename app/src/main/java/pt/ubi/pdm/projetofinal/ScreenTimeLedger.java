@@ -0,0 +1,121 @@
+package pt.ubi.pdm.projetofinal;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+
+// Contas do tempo de ecrã de um dia a partir de eventos de primeiro/segundo plano (UsageEvents).
+// - Os eventos são somados por package à medida que chegam (o ScreenTimeStats só pede os novos).
+// - Cada package está em primeiro plano enquanto tiver pelo menos uma Activity retomada: um
+//   PAUSED/STOPPED de uma Activity (ex.: a anterior, ao abrir outra da mesma app) não fecha a
+//   sessão aberta por outra.
+// - Sessões ainda abertas contam até "agora" sem serem fechadas.
+// - Packages de sistema (launcher, teclado, definições, ...) e a própria app não contam;
+//   a decisão é tomada uma vez por package e fica em memória.
+// - Só contam packages com mais de MIN_PACKAGE_MS no dia (aberturas acidentais).
+// Sem classes Android, por isso é testado na JVM. Não é thread-safe (uma só thread de trabalho).
+
+final class ScreenTimeLedger {
+
+    static final long MIN_PACKAGE_MS = 20_000;
+
+    private static final String[] EXCLUDED_PREFIXES = {"com.android", "com.google.android"};
+    private static final String[] EXCLUDED_PARTS = {
+            "launcher", "systemui", "inputmethod", "settings", "packageinstaller", "wellbeing"};
+
+    private final String ownPackage;
+    private final Map<String, Boolean> excluded = new HashMap<>();
+    private final Map<String, Long> closedMs = new HashMap<>();    // tempo já fechado por package
+    private final Map<String, Long> openSince = new HashMap<>();   // sessões em primeiro plano
+    private final Map<String, Set<String>> openActivities = new HashMap<>(); // Activities retomadas por package
+    private long dayStart;
+    private long processedUntil;
+
+    ScreenTimeLedger(String ownPackage) {
+        this.ownPackage = ownPackage;
+    }
+
+    // Começa um novo dia: apaga as contas; sessões abertas passam a contar desde dayStart.
+    void reset(long dayStart) {
+        boolean continuing = processedUntil > 0 && processedUntil <= dayStart;
+        this.dayStart = dayStart;
+        closedMs.clear();
+        if (continuing) {
+            // Continua a leitura onde parou (os eventos até à meia-noite fecham as sessões de ontem)
+            for (Map.Entry<String, Long> e : openSince.entrySet()) e.setValue(dayStart);
+        } else {
+            openSince.clear();
+            openActivities.clear();
+            processedUntil = dayStart;
+        }
+    }
+
+    long dayStart() { return dayStart; }
+
+    // Até onde os eventos já foram lidos (o próximo pedido começa aqui).
+    long processedUntil() { return processedUntil; }
+
+    void advanceTo(long ts) {
+        if (ts > processedUntil) processedUntil = ts;
+    }
+
+    // cls = Activity do evento (pode ser null).
+    void onForeground(String pkg, String cls, long ts) {
+        if (isExcluded(pkg)) return;
+        Set<String> open = openActivities.get(pkg);
+        if (open == null) {
+            open = new HashSet<>();
+            openActivities.put(pkg, open);
+        }
+        open.add(cls == null ? "" : cls);
+        if (!openSince.containsKey(pkg)) openSince.put(pkg, Math.max(ts, dayStart));
+    }
+
+    void onBackground(String pkg, String cls, long ts) {
+        Set<String> open = openActivities.get(pkg);
+        if (open == null || !open.remove(cls == null ? "" : cls) || !open.isEmpty()) return;
+        openActivities.remove(pkg);
+        Long since = openSince.remove(pkg);
+        if (since == null) return;
+        long ms = ts - since;
+        if (ms <= 0) return;
+        Long prev = closedMs.get(pkg);
+        closedMs.put(pkg, prev == null ? ms : prev + ms);
+    }
+
+    // Total do dia até "now": sessões fechadas + abertas, só packages acima de MIN_PACKAGE_MS.
+    long total(long now) {
+        long total = 0;
+        for (Map.Entry<String, Long> e : closedMs.entrySet()) {
+            long ms = e.getValue() + open(e.getKey(), now);
+            if (ms > MIN_PACKAGE_MS) total += ms;
+        }
+        for (String pkg : openSince.keySet()) {
+            if (closedMs.containsKey(pkg)) continue;
+            long ms = open(pkg, now);
+            if (ms > MIN_PACKAGE_MS) total += ms;
+        }
+        return total;
+    }
+
+    private long open(String pkg, long now) {
+        Long since = openSince.get(pkg);
+        return since == null ? 0 : Math.max(0, now - since);
+    }
+
+    boolean isExcluded(String pkg) {
+        Boolean cached = excluded.get(pkg);
+        if (cached != null) return cached;
+        boolean out = pkg.equals(ownPackage) || matches(pkg);
+        excluded.put(pkg, out);
+        return out;
+    }
+
+    private static boolean matches(String pkg) {
+        for (String p : EXCLUDED_PREFIXES) if (pkg.startsWith(p)) return true;
+        for (String p : EXCLUDED_PARTS) if (pkg.contains(p)) return true;
+        return false;
+    }
+}
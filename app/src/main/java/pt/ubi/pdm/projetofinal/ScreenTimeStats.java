@@ -0,0 +1,108 @@
+package pt.ubi.pdm.projetofinal;
+
+import android.app.usage.UsageEvents;
+import android.app.usage.UsageStatsManager;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import java.util.Calendar;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+// Tempo de ecrã de hoje para as sugestões de bem-estar.
+// - Lido numa thread própria (o UsageStatsManager é uma chamada a outro processo).
+// - Incremental: cada atualização só pede os eventos (queryEvents) desde o último já processado
+//   e soma-os no ScreenTimeLedger; à meia-noite as contas recomeçam.
+// - O último total fica em cache: o ecrã inicial mostra-o logo e atualiza quando chegar o novo.
+// Requer o acesso a "Uso de apps"; sem ele o total fica a 0.
+
+public final class ScreenTimeStats {
+
+    public interface Callback { void onResult(long screenMs); }
+
+    private static ScreenTimeStats instance;
+
+    private final UsageStatsManager usm;
+    private final ScreenTimeLedger ledger;   // só usado na thread de trabalho
+    private final ExecutorService worker =
+            Executors.newSingleThreadExecutor(r -> new Thread(r, "oa-screen-time"));
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private volatile long cachedMs = -1;
+
+    private ScreenTimeStats(Context app) {
+        usm = app.getSystemService(UsageStatsManager.class);
+        ledger = new ScreenTimeLedger(app.getPackageName());
+    }
+
+    public static synchronized ScreenTimeStats get(Context ctx) {
+        if (instance == null) instance = new ScreenTimeStats(ctx.getApplicationContext());
+        return instance;
+    }
+
+    // Último total calculado (ms), ou -1 se ainda não houve nenhum.
+    public long cached() {
+        return cachedMs;
+    }
+
+    // Lê os eventos novos em background; cb recebe o total de hoje na main thread.
+    public void refresh(Callback cb) {
+        worker.execute(() -> {
+            long total = compute();
+            cachedMs = total;
+            main.post(() -> cb.onResult(total));
+        });
+    }
+
+    // ============================================================
+    // Secção: Cálculo (thread de trabalho)
+    // ============================================================
+
+    private long compute() {
+        long now = System.currentTimeMillis();
+        long today = startOfDay(now);
+        if (ledger.dayStart() != today) ledger.reset(today);
+
+        UsageEvents events;
+        try {
+            events = usm.queryEvents(ledger.processedUntil(), now);
+        } catch (SecurityException se) {
+            return 0L;
+        }
+        if (events == null) return ledger.total(now);
+
+        UsageEvents.Event e = new UsageEvents.Event();   // reutilizado em todos os eventos
+        long last = ledger.processedUntil() - 1;   // sem eventos → não avança
+        while (events.hasNextEvent()) {
+            events.getNextEvent(e);
+            String pkg = e.getPackageName();
+            long ts = e.getTimeStamp();
+            if (pkg == null) continue;
+            switch (e.getEventType()) {
+                case UsageEvents.Event.ACTIVITY_RESUMED:
+                    ledger.onForeground(pkg, e.getClassName(), ts);
+                    break;
+                case UsageEvents.Event.ACTIVITY_PAUSED:
+                case UsageEvents.Event.ACTIVITY_STOPPED:
+                    ledger.onBackground(pkg, e.getClassName(), ts);
+                    break;
+                default:
+                    break;
+            }
+            if (ts > last) last = ts;
+        }
+        // O próximo pedido começa logo a seguir ao último evento lido (intervalo [begin, end))
+        ledger.advanceTo(last + 1);
+        return ledger.total(now);
+    }
+
+    private static long startOfDay(long now) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(now);
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        return cal.getTimeInMillis();
+    }
+}
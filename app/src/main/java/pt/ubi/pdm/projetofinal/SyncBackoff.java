@@ -0,0 +1,30 @@
+package pt.ubi.pdm.projetofinal;
+
+import java.util.Random;
+
+
+// Política de novas tentativas para as operações da outbox.
+// Backoff exponencial (30 s, 1 min, 2 min, ... até 6 h) com jitter, para que várias
+// operações falhadas ao mesmo tempo não voltem a bater no backend todas juntas.
+// Só contam as rejeições do servidor; um timeout (sem resposta) reagenda sem gastar tentativas.
+
+public class SyncBackoff {
+
+    // Ao fim deste número de tentativas a operação passa a DEAD (as últimas já esperam 6 h,
+    // ~1 dia no total). As DEAD voltam à fila quando a app arranca (sqlite.requeueDead).
+    public static final int MAX_ATTEMPTS = 12;
+
+    private static final long BASE_DELAY_MS = 30_000L;
+    private static final long MAX_DELAY_MS = 6 * 60 * 60 * 1000L;
+    private static final Random RANDOM = new Random();
+
+
+    // Atraso até à próxima tentativa, depois de {@code attempts} falhas (1 = primeira falha).
+    // Metade do atraso é fixa e a outra metade aleatória ("equal jitter").
+    public static long delayMs(int attempts) {
+        int exp = Math.min(Math.max(attempts - 1, 0), 20);
+        long delay = Math.min(MAX_DELAY_MS, BASE_DELAY_MS << exp);
+        long half = delay / 2;
+        return half + (long) (RANDOM.nextDouble() * half);
+    }
+}
@@ -18,6 +18,9 @@ import java.util.concurrent.TimeUnit;
 public class SyncScheduler {
 
     private static final String PERIODIC_NAME = "oa_sync_periodic";
+    private static final String RETRY_NAME = "oa_sync_retry";
+    // Tag das execuções agendadas por kickAfter (o SyncWorker usa-a para saber se é uma delas)
+    static final String RETRY_TAG = "oa_sync_retry";
 
 
     // Agenda uma tarefa periódica (a cada 15 minutos) para sincronizar dados com a cloud.
@@ -41,7 +44,9 @@ public class SyncScheduler {
 
     // Executa uma tarefa de sincronização única imediatamente.
     // - Requer ligação à internet.
-    // - Usa WorkManager com política REPLACE para garantir que substitui qualquer tarefa anterior pendente.
+    // - Usa WorkManager com política KEEP: REPLACE cancelava a meio uma execução que podia já ter
+    //   escrito no Firebase sem marcar a outbox. Se já houver uma, é ela que envia o que foi
+    //   enfileirado (no fim o SyncWorker pede para repetir se ainda houver operações vencidas).
 
     public static void kickNow(Context ctx) {
         Constraints c = new Constraints.Builder()
@@ -54,6 +59,35 @@ public class SyncScheduler {
                         .build();
 
         WorkManager.getInstance(ctx)
-                .enqueueUniqueWork("oa_sync_once", ExistingWorkPolicy.REPLACE, once);
+                .enqueueUniqueWork("oa_sync_once", ExistingWorkPolicy.KEEP, once);
+    }
+
+
+    // Agenda uma sincronização única para daqui a delayMs (próxima tentativa com backoff).
+    // - Só existe uma tentativa agendada de cada vez; nunca é substituída (REPLACE cancelava a
+    //   meio uma tentativa já a correr, com a escrita feita e a outbox por marcar).
+    // - Chamado no fim do SyncWorker, depois de todo o estado local estar gravado.
+    // - Execuções periódicas/imediatas usam KEEP: se já houver uma tentativa agendada (ou a
+    //   correr), fica essa; o que vencer antes dela é apanhado pela sincronização periódica.
+    // - fromRetryRun: o worker que chama é ele próprio a tentativa agendada (KEEP ignorava o
+    //   pedido), por isso a próxima fica encadeada depois dele (APPEND_OR_REPLACE).
+
+    public static void kickAfter(Context ctx, long delayMs, boolean fromRetryRun) {
+        Constraints c = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+
+        OneTimeWorkRequest retry =
+                new OneTimeWorkRequest.Builder(SyncWorker.class)
+                        .setConstraints(c)
+                        .setInitialDelay(Math.max(0L, delayMs), TimeUnit.MILLISECONDS)
+                        .addTag(RETRY_TAG)
+                        .build();
+
+        ExistingWorkPolicy policy = fromRetryRun
+                ? ExistingWorkPolicy.APPEND_OR_REPLACE
+                : ExistingWorkPolicy.KEEP;
+        WorkManager.getInstance(ctx)
+                .enqueueUniqueWork(RETRY_NAME, policy, retry);
     }
 }
@@ -1,16 +1,33 @@
 package pt.ubi.pdm.projetofinal;
 
 import android.content.Context;
+import android.os.SystemClock;
 import androidx.annotation.NonNull;
 import androidx.work.Worker;
 import androidx.work.WorkerParameters;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.MutableData;
+import com.google.firebase.database.ServerValue;
+import com.google.firebase.database.Transaction;
 import org.json.JSONObject;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 
@@ -18,21 +35,40 @@ import java.util.Map;
 // Utiliza WorkManager para processar operações pendentes da base de dados local SQLITE.
 public class SyncWorker extends Worker {
 
+    // Tamanho da página lida da outbox (pode ser alterado via inputData)
+    public static final String KEY_PAGE_SIZE = "page_size";
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    // Idade (ms) a partir da qual as operações SENT são apagadas (pode ser alterada via inputData)
+    public static final String KEY_RETENTION_MS = "retention_ms";
+
+    // Orçamento de tempo por execução (o WorkManager interrompe o worker aos ~10 min)
+    private static final long TIME_BUDGET_MS = 8 * 60 * 1000L;
+    // Tempo máximo de espera pela escrita de uma página no Firebase
+    private static final long WRITE_TIMEOUT_S = 30;
+    // Execuções periódicas, imediatas e de nova tentativa têm nomes únicos diferentes no
+    // WorkManager e podiam correr ao mesmo tempo: só uma de cada vez lê e envia a outbox.
+    private static final ReentrantLock RUNNING = new ReentrantLock();
+
     private sqlite db;
 
     public SyncWorker(@NonNull Context context, @NonNull WorkerParameters params) {
         super(context, params);
-        db = new sqlite(context.getApplicationContext());
+        db = LocalRepository.get(context).helper();
     }
 
 
 
     // Método principal chamado pelo WorkManager.
     // - Verifica se o utilizador está autenticado.
-    // - Obtém até 20 operações pendentes da base de dados local.
-    // - Executa cada operação (diário, humor ou reflexão) conforme o tipo.
-    // - Marca como enviada ou falhada dependendo do resultado.
-    // - Retorna sucesso ou retry conforme o estado da sincronização.
+    // - Compacta a outbox (diário/humor: fica só a última versão por dia).
+    // - Lê a outbox por páginas (só operações cuja próxima tentativa já chegou) e junta
+    //   cada página num único updateChildren na raiz (/users/{uid} e /community).
+    // - Marca a página inteira como enviada numa só transação SQLite.
+    // - Se a página for rejeitada, isola as operações culpadas (backoff/DEAD) sem bloquear as restantes.
+    // - Continua até não haver operações vencidas ou o orçamento de tempo acabar.
+    // - No fim agenda uma execução para a próxima tentativa com backoff.
+    // - Apaga as operações SENT antigas (OutboxRetention).
+    // - Se outra execução já estiver a correr, não faz nada e pede ao WorkManager para repetir.
 
     @NonNull
     @Override
@@ -41,120 +77,299 @@ public class SyncWorker extends Worker {
         if (user == null) {
             return Result.retry();
         }
-        String uid = user.getUid();
-        FirebaseDatabase rtdb = FirebaseDatabase.getInstance();
+        if (!RUNNING.tryLock()) {
+            return Result.retry();
+        }
+        DatabaseReference rootRef = FirebaseDatabase.getInstance().getReference();
+        String userPath = "users/" + user.getUid() + "/";
+
+        int pageSize = Math.max(1, getInputData().getInt(KEY_PAGE_SIZE, DEFAULT_PAGE_SIZE));
+        long deadline = SystemClock.elapsedRealtime() + TIME_BUDGET_MS;
 
         try {
-            List<sqlite.OutboxOperation> pending = db.getPending(20);
-            if (pending.isEmpty()) {
-                return Result.success();
-            }
+            // Só a última versão de cada diário/humor precisa de ir para a cloud
+            db.compactOutbox();
 
-            for (sqlite.OutboxOperation op : pending) {
-                boolean ok;
-                switch (op.type) {
-                    case "UPSERT_DIARY":
-                        ok = upsertDiary(rtdb, uid, op.payloadJson);
-                        break;
-                    case "UPSERT_MOOD":
-                        ok = upsertMood(rtdb, uid, op.payloadJson);
-                        break;
-                    case "UPSERT_REFLECTION":
-                        ok = upsertReflection(rtdb, uid, op.payloadJson);
-                        break;
-                    default:
-                        db.markFailed(op.id, op.retries + 1);
-                        continue;
+            while (!isStopped() && SystemClock.elapsedRealtime() < deadline) {
+                List<sqlite.OutboxOperation> page = db.getPending(pageSize);
+                if (page.isEmpty()) {
+                    break;
                 }
 
-                if (ok) {
-                    db.markSent(op.id);
-                } else {
-                    db.markFailed(op.id, op.retries + 1);
-                    return Result.retry();
+                // Junta a página num único mapa multi-path (relativo à raiz)
+                Map<String, Object> updates = new HashMap<>();
+                List<sqlite.OutboxOperation> staged = new ArrayList<>();
+                List<sqlite.OutboxOperation> invalid = new ArrayList<>();
+                stageAll(rootRef, userPath, page, updates, staged, invalid);
+
+                // Payload inválido ou tipo desconhecido: nunca vai passar → dead-letter
+                db.markDead(invalid);
+
+                if (!staged.isEmpty() && !send(rootRef, userPath, updates, staged)) {
+                    // Sem resposta do servidor: não insistir agora, o backoff decide quando voltar
+                    break;
+                }
+
+                if (page.size() < pageSize) {
+                    break;
                 }
             }
 
-            return Result.success();
+            scheduleNextAttempt();
+            purgeSent();
+            // Operações vencidas por enviar (orçamento esgotado, ou enfileiradas depois da última
+            // página: o kickNow não cria outra execução enquanto esta corre) → WorkManager volta a correr
+            return db.getPending(1).isEmpty() ? Result.success() : Result.retry();
 
         } catch (Exception e) {
             return Result.retry();
+        } finally {
+            RUNNING.unlock();
         }
     }
 
 
-    // Envia uma entrada de diário para o Firebase Realtime Database.
-    // - Extrai os dados do JSON e envia para o nó /users/{uid}/diary/{dateId}.
+    // Envia uma página já preparada.
+    // - Sucesso: marca tudo como enviado numa transação e acerta os contadores dos posts comentados.
+    // - Timeout (sem ligação): aplica backoff a toda a página, sem contar tentativas, e devolve false.
+    // - Rejeitada pelo servidor: a escrita é atómica e nada foi aplicado, por isso
+    //   reenvia operação a operação para isolar as que falham (poison payload).
 
-    private boolean upsertDiary(FirebaseDatabase rtdb, String uid, String payloadJson) {
+    private boolean send(DatabaseReference rootRef, String userPath, Map<String, Object> updates,
+                         List<sqlite.OutboxOperation> staged) {
         try {
-            JSONObject j = new JSONObject(payloadJson);
-            String dateId    = j.getString("dateId");
-            String text      = j.optString("text", "");
-            long createdAt   = j.optLong("createdAt", System.currentTimeMillis());
-
-            Map<String, Object> data = new HashMap<>();
-            data.put("dateId", dateId);
-            data.put("text", text);
-            data.put("createdAt", createdAt); // ← regras exigem createdAt
-
-            rtdb.getReference("users").child(uid).child("diary").child(dateId)
-                    .setValue(data)
-                    .getResult();
-
+            Tasks.await(rootRef.updateChildren(updates), WRITE_TIMEOUT_S, TimeUnit.SECONDS);
+            db.markSent(staged);
+            refreshCommentCounts(rootRef, staged);
             return true;
-        } catch (Exception e) {
+        } catch (TimeoutException e) {
+            // A escrita fica na fila do cliente e pode ainda ser aplicada (reenviar é idempotente)
+            db.markUnreachable(staged);
             return false;
+        } catch (Exception e) {
+            if (staged.size() == 1) {
+                db.markFailed(staged);
+                return true;
+            }
+        }
+
+        List<sqlite.OutboxOperation> sent = new ArrayList<>();
+        List<sqlite.OutboxOperation> failed = new ArrayList<>();
+        List<sqlite.OutboxOperation> unreachable = new ArrayList<>();
+        List<sqlite.OutboxOperation> invalid = new ArrayList<>();
+        boolean reachable = true;
+        for (sqlite.OutboxOperation op : staged) {
+            if (!reachable) { unreachable.add(op); continue; }
+            Map<String, Object> single = new HashMap<>();
+            List<sqlite.OutboxOperation> one = new ArrayList<>();
+            // Já passou no stageAll da página; se agora não passar, nunca vai passar → DEAD
+            stageAll(rootRef, userPath, Collections.singletonList(op), single, one, invalid);
+            if (one.isEmpty()) continue;
+            try {
+                Tasks.await(rootRef.updateChildren(single), WRITE_TIMEOUT_S, TimeUnit.SECONDS);
+                sent.add(op);
+            } catch (TimeoutException e) {
+                reachable = false;
+                unreachable.add(op);
+            } catch (Exception e) {
+                failed.add(op);
+            }
         }
+        db.markSent(sent);
+        db.markFailed(failed);
+        db.markUnreachable(unreachable);
+        db.markDead(invalid);
+        refreshCommentCounts(rootRef, sent);
+        return reachable;
     }
 
+    // commentCount/lastCommentAt dos posts que receberam comentários nesta escrita.
+    // Derivados dos comentários guardados (número de filhos e createdAt mais recente) e só sobem
+    // (transação com máximo), em vez de um ServerValue.increment por envio: um reenvio depois de
+    // um ack perdido, do processo morto antes do markSent ou de duas execuções sobrepostas não
+    // conta o mesmo comentário duas vezes. Uma falha aqui não mexe na outbox: o próximo
+    // comentário do post volta a acertar os valores.
+    private void refreshCommentCounts(DatabaseReference rootRef, List<sqlite.OutboxOperation> sent) {
+        Set<String> postIds = new HashSet<>();
+        for (sqlite.OutboxOperation op : sent) {
+            if (sqlite.OP_CREATE_COMMENT.equals(op.type)) postIds.add(op.keyRef);
+        }
+        for (String postId : postIds) {
+            try {
+                DataSnapshot comments = Tasks.await(rootRef.child("community/comments/" + postId).get(),
+                        WRITE_TIMEOUT_S, TimeUnit.SECONDS);
+                long lastAt = 0;
+                for (DataSnapshot c : comments.getChildren()) {
+                    Long at = c.child("createdAt").getValue(Long.class);
+                    if (at != null) lastAt = Math.max(lastAt, at);
+                }
+                Tasks.await(raiseCommentCounters(rootRef.child("community/posts/" + postId),
+                        comments.getChildrenCount(), lastAt), WRITE_TIMEOUT_S, TimeUnit.SECONDS);
+            } catch (Exception ignored) { }
+        }
+    }
 
-    // Envia um registo de humor para o Firebase Realtime Database.
-    // - Extrai os dados do JSON e envia para o nó /users/{uid}/moods/{dateId}.
+    private static Task<Void> raiseCommentCounters(DatabaseReference postRef, long count, long lastAt) {
+        TaskCompletionSource<Void> done = new TaskCompletionSource<>();
+        postRef.runTransaction(new Transaction.Handler() {
+            @NonNull
+            @Override public Transaction.Result doTransaction(@NonNull MutableData cur) {
+                // Sem post (apagado, ou ainda fora da cache local): não o cria; se o servidor
+                // tiver o post, a transação é repetida com o valor real
+                if (cur.getValue() == null) return Transaction.success(cur);
+                Long n = cur.child("commentCount").getValue(Long.class);
+                if (n == null || n < count) cur.child("commentCount").setValue(count);
+                Long at = cur.child("lastCommentAt").getValue(Long.class);
+                if (lastAt > 0 && (at == null || at < lastAt)) cur.child("lastCommentAt").setValue(lastAt);
+                return Transaction.success(cur);
+            }
+            @Override public void onComplete(DatabaseError e, boolean committed, DataSnapshot snap) {
+                if (e != null) done.setException(e.toException());
+                else done.setResult(null);
+            }
+        });
+        return done.getTask();
+    }
 
-    private boolean upsertMood(FirebaseDatabase rtdb, String uid, String payloadJson) {
+    // Limpeza da outbox (linhas SENT antigas). Uma falha aqui não afeta a sincronização.
+    private void purgeSent() {
         try {
-            JSONObject j = new JSONObject(payloadJson);
-            String dateId  = j.getString("dateId");
-            int mood       = j.getInt("mood");
-            long createdAt = j.optLong("createdAt", System.currentTimeMillis());
+            long retentionMs = getInputData().getLong(KEY_RETENTION_MS, OutboxRetention.DEFAULT_RETENTION_MS);
+            OutboxRetention.run(db, retentionMs);
+        } catch (Exception ignored) { }
+    }
 
-            Map<String, Object> data = new HashMap<>();
-            data.put("dateId", dateId);
-            data.put("mood", mood);
-            data.put("createdAt", createdAt); // ← regras exigem createdAt
+    // Agenda a próxima execução para quando vencer a primeira tentativa com backoff.
+    // Assim uma falha transitória não é repetida em cada ciclo periódico de 15 minutos.
+    // Se esta execução já é a tentativa agendada, a seguinte fica encadeada (não a substitui).
+    private void scheduleNextAttempt() {
+        long next = db.nextScheduledAttempt();
+        if (next > 0) {
+            SyncScheduler.kickAfter(getApplicationContext(), next - System.currentTimeMillis(),
+                    getTags().contains(SyncScheduler.RETRY_TAG));
+        }
+    }
 
-            rtdb.getReference("users").child(uid).child("moods").child(dateId)
-                    .setValue(data)
-                    .getResult();
 
-            return true;
+    // Prepara um conjunto de operações: as válidas vão para staged, as restantes para invalid.
+
+    private void stageAll(DatabaseReference rootRef, String userPath, List<sqlite.OutboxOperation> ops,
+                          Map<String, Object> updates, List<sqlite.OutboxOperation> staged,
+                          List<sqlite.OutboxOperation> invalid) {
+        for (sqlite.OutboxOperation op : ops) {
+            if (stage(rootRef, userPath, op, updates)) staged.add(op);
+            else invalid.add(op);
+        }
+    }
+
+    // Adiciona uma operação da outbox ao mapa de updates, conforme o tipo.
+    // Devolve false se o tipo for desconhecido ou o payload não puder ser lido.
+
+    private boolean stage(DatabaseReference rootRef, String userPath, sqlite.OutboxOperation op,
+                          Map<String, Object> updates) {
+        try {
+            OutboxCodec.Payload p = op.payload != null
+                    ? OutboxCodec.decode(op.payload)
+                    : decodeLegacyJson(op);
+            if (!p.type.equals(op.type)) return false;
+            switch (op.type) {
+                case sqlite.OP_UPSERT_DIARY:
+                    stageDiary(userPath, p, updates);
+                    return true;
+                case sqlite.OP_UPSERT_MOOD:
+                    stageMood(userPath, p, updates);
+                    return true;
+                case sqlite.OP_UPSERT_REFLECTION:
+                    stageReflection(rootRef, userPath, p, updates);
+                    return true;
+                case sqlite.OP_CREATE_POST:
+                    stagePost(p, updates);
+                    return true;
+                case sqlite.OP_CREATE_COMMENT:
+                    stageComment(p, updates);
+                    return true;
+                default:
+                    return false;
+            }
         } catch (Exception e) {
             return false;
         }
     }
 
-    // Envia uma reflexão para o Firebase Realtime Database.
-    // - Extrai os dados do JSON e envia para o nó /users/{uid}/reflections/{dateId}/{autoId}.
-    private boolean upsertReflection(FirebaseDatabase rtdb, String uid, String payloadJson) {
-        try {
-            JSONObject j = new JSONObject(payloadJson);
-            String dateId    = j.getString("dateId");
-            String text      = j.optString("text", "");
-            long createdAt   = j.optLong("createdAt", System.currentTimeMillis());
+    // Linhas criadas antes do OutboxCodec (coluna payloadJson).
+    private static OutboxCodec.Payload decodeLegacyJson(sqlite.OutboxOperation op) throws Exception {
+        JSONObject j = new JSONObject(op.payloadJson);
+        return new OutboxCodec.Payload(op.type,
+                j.getString("dateId"),
+                j.optString("text", ""),
+                sqlite.OP_UPSERT_MOOD.equals(op.type) ? j.getInt("mood") : 0,
+                j.optLong("createdAt", System.currentTimeMillis()),
+                null);
+    }
 
-            Map<String, Object> data = new HashMap<>();
-            data.put("dateId", dateId);
-            data.put("text", text);
-            data.put("createdAt", createdAt); // ← regras exigem createdAt
 
-            rtdb.getReference("users").child(uid).child("reflections").child(dateId)
-                    .push().setValue(data)
-                    .getResult();
+    // Entrada de diário → /users/{uid}/diary/{dateId}.
+    // createdAt é a hora do servidor (como na escrita online): é por ele que os outros
+    // dispositivos retomam a sincronização incremental (cursor do diário).
 
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
+    private void stageDiary(String userPath, OutboxCodec.Payload p, Map<String, Object> updates) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("dateId", p.dateId);
+        data.put("text", p.text);
+        data.put("createdAt", ServerValue.TIMESTAMP); // ← regras exigem createdAt
+
+        updates.put(userPath + "diary/" + p.dateId, data);
+    }
+
+
+    // Registo de humor → /users/{uid}/moods/{dateId}.
+
+    private void stageMood(String userPath, OutboxCodec.Payload p, Map<String, Object> updates) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("dateId", p.dateId);
+        data.put("mood", p.mood);
+        data.put("createdAt", p.createdAt); // ← regras exigem createdAt
+
+        updates.put(userPath + "moods/" + p.dateId, data);
+    }
+
+    // Reflexão → /users/{uid}/reflections/{dateId}/{autoId}.
+    // Usa a chave reservada quando a reflexão foi criada: reenviar escreve no mesmo nó (idempotente).
+    private void stageReflection(DatabaseReference rootRef, String userPath, OutboxCodec.Payload p,
+                                 Map<String, Object> updates) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("dateId", p.dateId);
+        data.put("text", p.text);
+        data.put("createdAt", p.createdAt); // ← regras exigem createdAt
+
+        String autoId = p.remoteKey != null
+                ? p.remoteKey
+                : rootRef.push().getKey();
+        updates.put(userPath + "reflections/" + p.dateId + "/" + autoId, data);
+    }
+
+    // Post da comunidade → /community/posts/{postId}, com a chave reservada no cliente.
+    // Escrito campo a campo: repetir o envio não apaga commentCount/lastCommentAt já existentes.
+    // createdAt é o da criação (guardado no payload): um reenvio não muda a posição no feed.
+
+    private void stagePost(OutboxCodec.Payload p, Map<String, Object> updates) {
+        String base = "community/posts/" + p.postId + "/";
+        updates.put(base + "text", p.text);
+        updates.put(base + "author", p.author);
+        updates.put(base + "anonymous", p.anonymous);
+        updates.put(base + "uid", p.uid);
+        updates.put(base + "createdAt", p.createdAt);
+    }
+
+    // Comentário → /community/comments/{postId}/{commentId}, com o createdAt da criação
+    // (commentCount/lastCommentAt do post são acertados depois do envio, em refreshCommentCounts).
+
+    private void stageComment(OutboxCodec.Payload p, Map<String, Object> updates) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("text", p.text);
+        data.put("author", p.author);
+        data.put("createdAt", p.createdAt);
+
+        updates.put("community/comments/" + p.postId + "/" + p.remoteKey, data);
     }
 }
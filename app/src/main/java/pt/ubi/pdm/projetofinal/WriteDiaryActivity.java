@@ -9,7 +9,6 @@ import com.google.android.material.button.MaterialButton;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.database.DatabaseReference;
-import com.google.firebase.database.FirebaseDatabase;
 import com.google.firebase.database.ServerValue;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -26,7 +25,7 @@ import java.util.Objects;
 public class WriteDiaryActivity extends AppCompatActivity {
 
     public static final String EXTRA_DATE_ID = "extra_date_id";
-    private sqlite db;
+    private LocalRepository repo;
     private String currentDateId;
     private MaterialToolbar topBar;
     private EditText etDiary;
@@ -47,7 +46,7 @@ public class WriteDiaryActivity extends AppCompatActivity {
         etDiary = findViewById(R.id.etDiary);
         MaterialButton btnSave = findViewById(R.id.btnSave);
 
-        db = new sqlite(this);
+        repo = LocalRepository.get(this);
 
         // 1) Data alvo: vinda do calendário ou hoje
         String passed = getIntent().getStringExtra(EXTRA_DATE_ID);
@@ -58,11 +57,7 @@ public class WriteDiaryActivity extends AppCompatActivity {
         //Iniciar Firebase (diário)
         FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
         if (user != null) {
-            diaryRef = FirebaseDatabase.getInstance()
-                    .getReference("users")
-                    .child(user.getUid())
-                    .child("diary");
-            diaryRef.keepSynced(true);
+            diaryRef = DataHub.get(this).userRef(user.getUid(), DataHub.NODE_DIARY);
         }
 
         setupUiFor(currentDateId);
@@ -71,9 +66,10 @@ public class WriteDiaryActivity extends AppCompatActivity {
         btnSave.setOnClickListener(v -> {
             String text = etDiary.getText() == null ? "" : etDiary.getText().toString().trim();
             long now = System.currentTimeMillis();
+            String dateId = currentDateId;
 
-            // escreve SEMPRE local (para histórico/offline)
-            db.upsertDiary(currentDateId, text, now);
+            // escreve SEMPRE local (para histórico/offline), fora da main thread
+            repo.write(db -> db.upsertDiary(dateId, text, now));
 
             // tenta gravar na cloud se disponível
             if (diaryRef != null) {
@@ -90,20 +86,16 @@ public class WriteDiaryActivity extends AppCompatActivity {
                         })
                         .addOnFailureListener(e -> {
                             // fallback: entra na fila para sincronizar depois
-                            String q = "{\"dateId\":\"" + currentDateId + "\"," +
-                                    "\"text\":" + quoteJson(text) + "," +
-                                    "\"createdAt\":" + now + "}";
-                            db.enqueue("UPSERT_DIARY", currentDateId, q, now);
+                            repo.write(db -> db.enqueue(sqlite.OP_UPSERT_DIARY, dateId,
+                                    OutboxCodec.encodeDiary(dateId, text, now), now));
                             Toast.makeText(this, "Sem ligação — guardado localmente (vai sincronizar)", Toast.LENGTH_SHORT).show();
                             setResult(RESULT_OK);
                             finish();
                         });
             } else {
                 // sem auth/ref → offline: enfileirar para sync posterior
-                String q = "{\"dateId\":\"" + currentDateId + "\"," +
-                        "\"text\":" + quoteJson(text) + "," +
-                        "\"createdAt\":" + now + "}";
-                db.enqueue("UPSERT_DIARY", currentDateId, q, now);
+                repo.write(db -> db.enqueue(sqlite.OP_UPSERT_DIARY, dateId,
+                        OutboxCodec.encodeDiary(dateId, text, now), now));
                 Toast.makeText(this, "Sem ligação — guardado localmente (vai sincronizar)", Toast.LENGTH_SHORT).show();
                 setResult(RESULT_OK);
                 finish();
@@ -125,23 +117,22 @@ public class WriteDiaryActivity extends AppCompatActivity {
     }
 
     // Atualiza a interface com base na data selecionada.
-    // Define o título da toolbar e carrega o texto existente do diário.
+    // Define o título da toolbar e carrega o texto existente do diário (leitura em background).
 
     private void setupUiFor(String dateId) {
         if (topBar != null) topBar.setTitle("Diário de " + formatDateUi(dateId));
         etDiary.setText("");
-        sqlite.DiaryEntry existing = db.getDiaryByDate(dateId);
-        if (existing != null && existing.text != null) etDiary.setText(existing.text);
+        repo.read(db -> db.getDiaryByDate(dateId), existing -> {
+            // Só aplica se a data ainda for a mesma (onResume pode ter mudado o dia)
+            if (!dateId.equals(currentDateId) || isFinishing() || isDestroyed()) return;
+            if (existing != null && existing.text != null) etDiary.setText(existing.text);
+        });
     }
 
     // Retorna a data atual no formato yyyy-MM-dd.
     private static String todayId() {
         return new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date());
     }
-    // Envia uma string para ser usada em JSON.
-    private static String quoteJson(String s) {
-        return "\"" + s.replace("\\","\\\\").replace("\"","\\\"") + "\"";
-    }
     // Converte uma data no formato yyyy-MM-dd para o formato dd/MM/yyyy para exibição na UI.
     private static String formatDateUi(String dateId) {
         try {
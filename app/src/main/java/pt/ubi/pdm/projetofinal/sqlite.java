@@ -3,20 +3,29 @@ package pt.ubi.pdm.projetofinal;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 
 import androidx.annotation.Nullable;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 public class sqlite extends SQLiteOpenHelper {
 
     private static final String DB_NAME = "oa.db";
-    private static final int DB_VERSION = 2; // ⬅️ subimos para 2
+    private static final int DB_VERSION = 11; // ⬅️ 11: agregados de humor (mood_agg)
 
     // Tabela DIARY
     private static final String T_DIARY = "diary";
@@ -35,10 +44,13 @@ public class sqlite extends SQLiteOpenHelper {
     private static final String C_OUTBOX_ID = "id";
     private static final String C_OUTBOX_TYPE = "type";
     private static final String C_OUTBOX_KEY = "keyRef";
-    private static final String C_OUTBOX_PAYLOAD = "payloadJson";
+    private static final String C_OUTBOX_PAYLOAD = "payloadJson";    // legado (JSON); vazio nas linhas novas
+    private static final String C_OUTBOX_PAYLOAD_BLOB = "payload";   // OutboxCodec
+    private static final String C_OUTBOX_SENT_AT = "sentAt";
     private static final String C_OUTBOX_UPDATED = "updatedAt";
     private static final String C_OUTBOX_STATUS = "status";
     private static final String C_OUTBOX_RETRIES = "retries";
+    private static final String C_OUTBOX_NEXT_ATTEMPT = "nextAttemptAt";
 
     // Tabela REFLECTIONS (nova)
     private static final String T_REFLECTIONS = "reflections";
@@ -46,13 +58,95 @@ public class sqlite extends SQLiteOpenHelper {
     private static final String C_REFL_DATEID = "dateId"; // "yyyy-MM-dd"
     private static final String C_REFL_TEXT = "text";
     private static final String C_REFL_UPDATED = "updatedAt";
+    private static final String C_REFL_REMOTE_KEY = "remoteKey";     // chave push no RTDB (null se desconhecida)
+    private static final String C_REFL_HASH = "contentHash";         // sha256(dateId + texto) — único
+
+    // Tabela SYNC_CURSOR: posição já espelhada por nó do RTDB (ex.: "users/{uid}/diary")
+    private static final String T_SYNC_CURSOR = "sync_cursor";
+    private static final String C_CURSOR_NODE = "node";
+    private static final String C_CURSOR_POSITION = "position"; // timestamp (INTEGER) ou chave de dia (TEXT)
+    private static final String C_CURSOR_UPDATED = "updatedAt";
+
+    // Tabelas FEED_POSTS / FEED_COMMENTS: cache do feed da comunidade, limitada por LRU (lastAccess)
+    private static final String T_FEED_POSTS = "feed_posts";
+    private static final String T_FEED_COMMENTS = "feed_comments";
+    private static final String C_FEED_ID = "id";
+    private static final String C_FEED_POST_ID = "postId";
+    private static final String C_FEED_TEXT = "text";
+    private static final String C_FEED_AUTHOR = "author";
+    private static final String C_FEED_ANON = "anonymous";
+    private static final String C_FEED_UID = "uid";
+    private static final String C_FEED_CREATED = "createdAt";
+    private static final String C_FEED_COMMENT_COUNT = "commentCount";
+    private static final String C_FEED_ACCESS = "lastAccess";
+
+    // Tabela MOOD_AGG: somas/contagens de humor por dia, semana ISO e mês (ver MoodAggregates).
+    // Nas linhas de dia: acumulados desde o primeiro registo e dias seguidos até esse dia.
+    private static final String T_MOOD_AGG = "mood_agg";
+    private static final String C_AGG_PERIOD = "period";   // MoodAggregates.PERIOD_*
+    private static final String C_AGG_BUCKET = "bucket";   // "yyyy-MM-dd", "yyyy-Www" ou "yyyy-MM"
+    private static final String C_AGG_SUM = "sum";
+    private static final String C_AGG_COUNT = "count";
+    private static final String C_AGG_CUM_SUM = "cumSum";
+    private static final String C_AGG_CUM_COUNT = "cumCount";
+    private static final String C_AGG_STREAK = "streak";
 
     public static final String STATUS_PENDING = "PENDING";
     public static final String STATUS_SENT = "SENT";
-    public static final String STATUS_FAILED = "FAILED";
+    public static final String STATUS_FAILED = "FAILED"; // falhou, nova tentativa agendada em nextAttemptAt
+    public static final String STATUS_DEAD = "DEAD";     // esgotou as tentativas (dead-letter)
+    // Estados que ainda aguardam envio
+    private static final String AWAITING_STATUSES = "('" + STATUS_PENDING + "','" + STATUS_FAILED + "')";
+
+    // Tipos da outbox em que só interessa a última versão por keyRef (dateId)
+    public static final String OP_UPSERT_DIARY = "UPSERT_DIARY";
+    public static final String OP_UPSERT_MOOD = "UPSERT_MOOD";
+    public static final String OP_UPSERT_REFLECTION = "UPSERT_REFLECTION";
+    // Comunidade (append-only): keyRef = id do post (chave push reservada no cliente)
+    public static final String OP_CREATE_POST = "CREATE_POST";
+    public static final String OP_CREATE_COMMENT = "CREATE_COMMENT";
+    private static final String COALESCED_TYPES = "('" + OP_UPSERT_DIARY + "','" + OP_UPSERT_MOOD + "')";
+
+    // SQL dos statements reutilizados no modo afinado
+    private static final String SQL_UPSERT_DIARY = "INSERT OR REPLACE INTO " + T_DIARY +
+            "(" + C_DIARY_DATEID + "," + C_DIARY_TEXT + "," + C_DIARY_UPDATED + ") VALUES(?,?,?)";
+    private static final String SQL_UPSERT_MOOD = "INSERT OR REPLACE INTO " + T_MOOD +
+            "(" + C_MOOD_DATEID + "," + C_MOOD_VALUE + "," + C_MOOD_UPDATED + ") VALUES(?,?,?)";
+    private static final String SQL_OUTBOX_INSERT = "INSERT INTO " + T_OUTBOX +
+            "(" + C_OUTBOX_ID + "," + C_OUTBOX_TYPE + "," + C_OUTBOX_KEY + "," + C_OUTBOX_PAYLOAD + "," +
+            C_OUTBOX_PAYLOAD_BLOB + "," + C_OUTBOX_UPDATED + "," + C_OUTBOX_STATUS + "," + C_OUTBOX_RETRIES + ")" +
+            " VALUES(?,?,?,'',?,?,'" + STATUS_PENDING + "',0)";
+    private static final String SQL_OUTBOX_COALESCE = "UPDATE " + T_OUTBOX + " SET " +
+            C_OUTBOX_PAYLOAD + "=''," + C_OUTBOX_PAYLOAD_BLOB + "=?," + C_OUTBOX_UPDATED + "=?," +
+            C_OUTBOX_STATUS + "='" + STATUS_PENDING + "'," + C_OUTBOX_RETRIES + "=0," + C_OUTBOX_NEXT_ATTEMPT + "=0" +
+            " WHERE " + C_OUTBOX_TYPE + "=? AND " + C_OUTBOX_KEY + "=? AND " + C_OUTBOX_STATUS + " IN " + AWAITING_STATUSES;
+    private static final String SQL_REFL_INSERT = "INSERT OR IGNORE INTO " + T_REFLECTIONS +
+            "(" + C_REFL_ID + "," + C_REFL_DATEID + "," + C_REFL_TEXT + "," + C_REFL_UPDATED + "," +
+            C_REFL_REMOTE_KEY + "," + C_REFL_HASH + ") VALUES(?,?,?,?,?,?)";
+    private static final String SQL_REFL_SET_KEY = "UPDATE " + T_REFLECTIONS + " SET " + C_REFL_REMOTE_KEY + "=?" +
+            " WHERE " + C_REFL_HASH + "=? AND " + C_REFL_REMOTE_KEY + " IS NULL";
+    private static final String SQL_OUTBOX_AWAITING_ID = "SELECT " + C_OUTBOX_ID + " FROM " + T_OUTBOX +
+            " WHERE " + C_OUTBOX_TYPE + "=? AND " + C_OUTBOX_KEY + "=? AND " + C_OUTBOX_STATUS + " IN " + AWAITING_STATUSES;
+    private static final String SQL_OUTBOX_SENT = "UPDATE " + T_OUTBOX + " SET " +
+            C_OUTBOX_STATUS + "='" + STATUS_SENT + "'," + C_OUTBOX_SENT_AT + "=?" +
+            " WHERE " + C_OUTBOX_ID + "=? AND " + C_OUTBOX_UPDATED + "=?";
+
+    // Modo afinado (opt-in): WAL + statements compilados reutilizados nas escritas frequentes.
+    private final boolean tuned;
+    // Cache de SQLiteStatement por SQL, válida para a ligação de escrita atual
+    private final Map<String, SQLiteStatement> statements = new HashMap<>();
+    private SQLiteDatabase statementsDb;
 
     public sqlite(@Nullable Context context) {
+        this(context, false);
+    }
+
+    // tuned=true: leituras da UI deixam de esperar pelas escritas do SyncWorker/listeners (WAL)
+    // e os upserts frequentes reutilizam statements já compilados.
+    public sqlite(@Nullable Context context, boolean tuned) {
         super(context, DB_NAME, null, DB_VERSION);
+        this.tuned = tuned;
+        if (tuned) setWriteAheadLoggingEnabled(true);
     }
 
     @Override public void onCreate(SQLiteDatabase db) {
@@ -74,16 +168,27 @@ public class sqlite extends SQLiteOpenHelper {
                 C_OUTBOX_PAYLOAD + " TEXT NOT NULL," +
                 C_OUTBOX_UPDATED + " INTEGER NOT NULL," +
                 C_OUTBOX_STATUS + " TEXT NOT NULL," +
-                C_OUTBOX_RETRIES + " INTEGER NOT NULL DEFAULT 0)");
-        db.execSQL("CREATE INDEX IF NOT EXISTS idx_outbox_status ON " + T_OUTBOX + "(" + C_OUTBOX_STATUS + ")");
+                C_OUTBOX_RETRIES + " INTEGER NOT NULL DEFAULT 0," +
+                C_OUTBOX_NEXT_ATTEMPT + " INTEGER NOT NULL DEFAULT 0," +
+                C_OUTBOX_PAYLOAD_BLOB + " BLOB," +
+                C_OUTBOX_SENT_AT + " INTEGER)");
+        createOutboxCoalesceIndex(db);
+        createOutboxDueIndex(db);
 
         // Reflections (nova)
         db.execSQL("CREATE TABLE IF NOT EXISTS " + T_REFLECTIONS + " (" +
                 C_REFL_ID + " TEXT PRIMARY KEY," +
                 C_REFL_DATEID + " TEXT NOT NULL," +
                 C_REFL_TEXT + " TEXT NOT NULL," +
-                C_REFL_UPDATED + " INTEGER NOT NULL)");
+                C_REFL_UPDATED + " INTEGER NOT NULL," +
+                C_REFL_REMOTE_KEY + " TEXT," +
+                C_REFL_HASH + " TEXT)");
         db.execSQL("CREATE INDEX IF NOT EXISTS idx_reflections_date ON " + T_REFLECTIONS + "(" + C_REFL_DATEID + ")");
+        createReflectionIdentityIndexes(db);
+
+        createSyncCursorTable(db);
+        createFeedCacheTables(db);
+        createMoodAggTable(db);
     }
 
     @Override public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
@@ -95,6 +200,223 @@ public class sqlite extends SQLiteOpenHelper {
                     C_REFL_UPDATED + " INTEGER NOT NULL)");
             db.execSQL("CREATE INDEX IF NOT EXISTS idx_reflections_date ON " + T_REFLECTIONS + "(" + C_REFL_DATEID + ")");
         }
+        if (oldVersion < 3) {
+            // Remove versões intermédias já existentes antes de impor a unicidade
+            compactOutbox(db);
+            createOutboxCoalesceIndex(db);
+        }
+        if (oldVersion < 4) {
+            // FAILED antigos ficam com nextAttemptAt=0 → voltam a ser tentados (ou vão para DEAD)
+            db.execSQL("ALTER TABLE " + T_OUTBOX + " ADD COLUMN " + C_OUTBOX_NEXT_ATTEMPT + " INTEGER NOT NULL DEFAULT 0");
+            // A unicidade passa a abranger também as operações FAILED
+            db.execSQL("DROP INDEX IF EXISTS idx_outbox_coalesce");
+            compactOutbox(db);
+            createOutboxCoalesceIndex(db);
+            createOutboxDueIndex(db);
+        }
+        if (oldVersion < 5) {
+            // Linhas antigas ficam com payload NULL e continuam a ser lidas pelo JSON legado
+            db.execSQL("ALTER TABLE " + T_OUTBOX + " ADD COLUMN " + C_OUTBOX_PAYLOAD_BLOB + " BLOB");
+        }
+        if (oldVersion < 6) {
+            db.execSQL("ALTER TABLE " + T_OUTBOX + " ADD COLUMN " + C_OUTBOX_SENT_AT + " INTEGER");
+            // Linhas já enviadas: a melhor aproximação do envio é o updatedAt
+            db.execSQL("UPDATE " + T_OUTBOX + " SET " + C_OUTBOX_SENT_AT + "=" + C_OUTBOX_UPDATED +
+                    " WHERE " + C_OUTBOX_STATUS + "='" + STATUS_SENT + "'");
+            // idx_outbox_due (status, nextAttemptAt) já cobre as pesquisas por status
+            db.execSQL("DROP INDEX IF EXISTS idx_outbox_status");
+        }
+        if (oldVersion < 7) {
+            db.execSQL("ALTER TABLE " + T_REFLECTIONS + " ADD COLUMN " + C_REFL_REMOTE_KEY + " TEXT");
+            db.execSQL("ALTER TABLE " + T_REFLECTIONS + " ADD COLUMN " + C_REFL_HASH + " TEXT");
+            backfillReflectionHashes(db);
+            createReflectionIdentityIndexes(db);
+        }
+        if (oldVersion < 8) {
+            // Sem cursor, a primeira sincronização de cada nó volta a usar a janela completa
+            createSyncCursorTable(db);
+        }
+        if (oldVersion < 9) {
+            createFeedCacheTables(db);
+        } else if (oldVersion < 10) {
+            // (na v9 a tabela foi criada sem a coluna; quem vem de antes já a cria completa)
+            db.execSQL("ALTER TABLE " + T_FEED_POSTS + " ADD COLUMN " + C_FEED_COMMENT_COUNT + " INTEGER");
+        }
+        if (oldVersion < 11) {
+            createMoodAggTable(db);
+            rebuildMoodAggregates(db);
+        }
+    }
+
+    @Override public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        // BD nova: auto_vacuum incremental tem de ser definido antes de criar as tabelas.
+        // Nas BD já existentes a conversão é feita pelo OutboxRetention (precisa de VACUUM).
+        if (!db.isReadOnly() && db.getVersion() == 0) {
+            db.execSQL("PRAGMA auto_vacuum=INCREMENTAL");
+        }
+        // Em WAL, synchronous=NORMAL continua seguro contra corrupção e evita um fsync por commit
+        if (tuned && !db.isReadOnly()) {
+            db.execSQL("PRAGMA synchronous=NORMAL");
+        }
+    }
+
+    @Override public synchronized void close() {
+        closeStatements();
+        super.close();
+    }
+
+    // Devolve o statement compilado para este SQL (compila na primeira utilização).
+    // Se a ligação de escrita mudou (close/reabertura), a cache é descartada.
+    // Quem usa o statement tem de o fazer dentro de synchronized (statement) — não é thread-safe.
+    private synchronized SQLiteStatement statement(String sql) {
+        SQLiteDatabase w = getWritableDatabase();
+        if (w != statementsDb) {
+            closeStatements();
+            statementsDb = w;
+        }
+        SQLiteStatement st = statements.get(sql);
+        if (st == null) {
+            st = w.compileStatement(sql);
+            statements.put(sql, st);
+        }
+        return st;
+    }
+
+    private synchronized void closeStatements() {
+        for (SQLiteStatement st : statements.values()) st.close();
+        statements.clear();
+        statementsDb = null;
+    }
+
+    // Índice único parcial: no máximo uma operação por enviar por (type, keyRef) para diário/humor.
+    private static void createOutboxCoalesceIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS idx_outbox_coalesce ON " + T_OUTBOX +
+                "(" + C_OUTBOX_TYPE + "," + C_OUTBOX_KEY + ")" +
+                " WHERE " + C_OUTBOX_STATUS + " IN " + AWAITING_STATUSES +
+                " AND " + C_OUTBOX_TYPE + " IN " + COALESCED_TYPES);
+    }
+
+    // "position" sem tipo declarado: guarda o valor tal como é escrito (INTEGER ou TEXT),
+    // por isso a comparação ao avançar é numérica para timestamps e lexicográfica para dias.
+    private static void createSyncCursorTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + T_SYNC_CURSOR + " (" +
+                C_CURSOR_NODE + " TEXT PRIMARY KEY," +
+                C_CURSOR_POSITION + " NOT NULL," +
+                C_CURSOR_UPDATED + " INTEGER NOT NULL)");
+    }
+
+    private static void createFeedCacheTables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + T_FEED_POSTS + " (" +
+                C_FEED_ID + " TEXT PRIMARY KEY," +
+                C_FEED_TEXT + " TEXT," +
+                C_FEED_AUTHOR + " TEXT," +
+                C_FEED_ANON + " INTEGER NOT NULL DEFAULT 0," +
+                C_FEED_UID + " TEXT," +
+                C_FEED_CREATED + " INTEGER NOT NULL," +
+                C_FEED_ACCESS + " INTEGER NOT NULL," +
+                C_FEED_COMMENT_COUNT + " INTEGER)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_feed_posts_created ON " + T_FEED_POSTS +
+                "(" + C_FEED_CREATED + " DESC," + C_FEED_ID + " DESC)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_feed_posts_access ON " + T_FEED_POSTS + "(" + C_FEED_ACCESS + ")");
+
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + T_FEED_COMMENTS + " (" +
+                C_FEED_ID + " TEXT PRIMARY KEY," +
+                C_FEED_POST_ID + " TEXT NOT NULL," +
+                C_FEED_TEXT + " TEXT," +
+                C_FEED_AUTHOR + " TEXT," +
+                C_FEED_CREATED + " INTEGER NOT NULL," +
+                C_FEED_ACCESS + " INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_feed_comments_post ON " + T_FEED_COMMENTS +
+                "(" + C_FEED_POST_ID + "," + C_FEED_CREATED + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_feed_comments_access ON " + T_FEED_COMMENTS + "(" + C_FEED_ACCESS + ")");
+    }
+
+    // Identidade das reflexões: o hash do conteúdo é único (dedup por índice);
+    // a chave RTDB fica indexada para procurar pela origem.
+    private static void createReflectionIdentityIndexes(SQLiteDatabase db) {
+        db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS idx_reflections_hash ON " + T_REFLECTIONS + "(" + C_REFL_HASH + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_reflections_remote ON " + T_REFLECTIONS + "(" + C_REFL_REMOTE_KEY + ")" +
+                " WHERE " + C_REFL_REMOTE_KEY + " IS NOT NULL");
+    }
+
+    // Calcula o contentHash das linhas antigas; repetidos (mesmo dia + texto) são apagados, fica o mais antigo.
+    private static void backfillReflectionHashes(SQLiteDatabase db) {
+        HashSet<String> seen = new HashSet<>();
+        Cursor c = db.query(T_REFLECTIONS, new String[]{C_REFL_ID, C_REFL_DATEID, C_REFL_TEXT},
+                null, null, null, null, C_REFL_UPDATED + " ASC");
+        try {
+            while (c.moveToNext()) {
+                String id = c.getString(0);
+                String hash = reflectionHash(c.getString(1), c.getString(2));
+                if (seen.add(hash)) {
+                    ContentValues cv = new ContentValues();
+                    cv.put(C_REFL_HASH, hash);
+                    db.update(T_REFLECTIONS, cv, C_REFL_ID + "=?", new String[]{id});
+                } else {
+                    db.delete(T_REFLECTIONS, C_REFL_ID + "=?", new String[]{id});
+                }
+            }
+        } finally { c.close(); }
+    }
+
+    private static void createMoodAggTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + T_MOOD_AGG + " (" +
+                C_AGG_PERIOD + " TEXT NOT NULL," +
+                C_AGG_BUCKET + " TEXT NOT NULL," +
+                C_AGG_SUM + " INTEGER NOT NULL," +
+                C_AGG_COUNT + " INTEGER NOT NULL," +
+                C_AGG_CUM_SUM + " INTEGER NOT NULL DEFAULT 0," +
+                C_AGG_CUM_COUNT + " INTEGER NOT NULL DEFAULT 0," +
+                C_AGG_STREAK + " INTEGER NOT NULL DEFAULT 0," +
+                "PRIMARY KEY(" + C_AGG_PERIOD + "," + C_AGG_BUCKET + "))");
+    }
+
+    // Recalcula todos os agregados a partir da tabela de humor (uma passagem por ordem de dia).
+    private static void rebuildMoodAggregates(SQLiteDatabase db) {
+        db.delete(T_MOOD_AGG, null, null);
+        Map<String, long[]> weeks = new LinkedHashMap<>();
+        Map<String, long[]> months = new LinkedHashMap<>();
+        MoodAggregates.DayRow prev = null;
+        Cursor c = db.query(T_MOOD, new String[]{C_MOOD_DATEID, C_MOOD_VALUE},
+                null, null, null, null, C_MOOD_DATEID + " ASC");
+        try {
+            while (c.moveToNext()) {
+                String day = c.getString(0);
+                int mood = c.getInt(1);
+                prev = MoodAggregates.follow(prev, day, mood);
+                db.insert(T_MOOD_AGG, null, dayValues(prev));
+
+                addTo(weeks, MoodAggregates.weekKey(day), mood);
+                addTo(months, MoodAggregates.monthKey(day), mood);
+            }
+        } finally { c.close(); }
+        insertBuckets(db, MoodAggregates.PERIOD_WEEK, weeks);
+        insertBuckets(db, MoodAggregates.PERIOD_MONTH, months);
+    }
+
+    private static void addTo(Map<String, long[]> buckets, String key, int mood) {
+        long[] b = buckets.get(key);
+        if (b == null) buckets.put(key, b = new long[2]);
+        b[0] += mood;
+        b[1]++;
+    }
+
+    private static void insertBuckets(SQLiteDatabase db, String period, Map<String, long[]> buckets) {
+        for (Map.Entry<String, long[]> e : buckets.entrySet()) {
+            ContentValues cv = new ContentValues();
+            cv.put(C_AGG_PERIOD, period);
+            cv.put(C_AGG_BUCKET, e.getKey());
+            cv.put(C_AGG_SUM, e.getValue()[0]);
+            cv.put(C_AGG_COUNT, e.getValue()[1]);
+            db.insert(T_MOOD_AGG, null, cv);
+        }
+    }
+
+    // Índice usado para escolher as operações cuja próxima tentativa já chegou.
+    private static void createOutboxDueIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_outbox_due ON " + T_OUTBOX +
+                "(" + C_OUTBOX_STATUS + "," + C_OUTBOX_NEXT_ATTEMPT + ")");
     }
 
     // ===== Diary =====
@@ -104,12 +426,33 @@ public class sqlite extends SQLiteOpenHelper {
         public long updatedAt;
     }
     public void upsertDiary(String dateId, String text, long updatedAt) {
+        if (tuned) {
+            SQLiteStatement st = statement(SQL_UPSERT_DIARY);
+            synchronized (st) {
+                st.bindString(1, dateId);
+                st.bindString(2, text);
+                st.bindLong(3, updatedAt);
+                st.executeInsert();
+                st.clearBindings();
+            }
+            return;
+        }
         ContentValues cv = new ContentValues();
         cv.put(C_DIARY_DATEID, dateId);
         cv.put(C_DIARY_TEXT, text);
         cv.put(C_DIARY_UPDATED, updatedAt);
         getWritableDatabase().insertWithOnConflict(T_DIARY, null, cv, SQLiteDatabase.CONFLICT_REPLACE);
     }
+    /** Várias entradas numa única transação (ex.: espelho da cloud). */
+    public void upsertDiaries(List<DiaryEntry> entries) {
+        if (entries.isEmpty()) return;
+        SQLiteDatabase w = getWritableDatabase();
+        w.beginTransactionNonExclusive();
+        try {
+            for (DiaryEntry e : entries) upsertDiary(e.dateId, e.text, e.updatedAt);
+            w.setTransactionSuccessful();
+        } finally { w.endTransaction(); }
+    }
     public DiaryEntry getDiaryByDate(String dateId) {
         Cursor c = getReadableDatabase().query(T_DIARY,
                 new String[]{C_DIARY_DATEID, C_DIARY_TEXT, C_DIARY_UPDATED},
@@ -125,6 +468,19 @@ public class sqlite extends SQLiteOpenHelper {
             return null;
         } finally { c.close(); }
     }
+    /** Texto atual de cada dia pedido (dateId → text); os dias sem entrada não aparecem. */
+    public Map<String, String> getDiaryTexts(Collection<String> dateIds) {
+        Map<String, String> out = new HashMap<>();
+        for (List<String> chunk : chunks(dateIds)) {
+            Cursor c = getReadableDatabase().query(T_DIARY, new String[]{C_DIARY_DATEID, C_DIARY_TEXT},
+                    C_DIARY_DATEID + " IN (" + placeholders(chunk.size()) + ")",
+                    chunk.toArray(new String[0]), null, null, null);
+            try {
+                while (c.moveToNext()) out.put(c.getString(0), c.getString(1));
+            } finally { c.close(); }
+        }
+        return out;
+    }
     public List<DiaryEntry> getDiaryLastNDays(int n) {
         ArrayList<DiaryEntry> list = new ArrayList<>();
         Cursor c = getReadableDatabase().query(T_DIARY,
@@ -141,6 +497,25 @@ public class sqlite extends SQLiteOpenHelper {
         } finally { c.close(); }
         return list;
     }
+    /** Entradas com texto entre dois dias (inclusive; null = sem limite), por dateId ASC. */
+    public List<DiaryEntry> getDiaryBetween(@Nullable String fromDay, @Nullable String toDay) {
+        ArrayList<DiaryEntry> list = new ArrayList<>();
+        List<String> args = new ArrayList<>();
+        String where = "TRIM(" + C_DIARY_TEXT + ")<>''" + dayRange(C_DIARY_DATEID, fromDay, toDay, args);
+        Cursor c = getReadableDatabase().query(T_DIARY,
+                new String[]{C_DIARY_DATEID, C_DIARY_TEXT, C_DIARY_UPDATED},
+                where, args.toArray(new String[0]), null, null, C_DIARY_DATEID + " ASC");
+        try {
+            while (c.moveToNext()) {
+                DiaryEntry e = new DiaryEntry();
+                e.dateId = c.getString(0);
+                e.text = c.getString(1);
+                e.updatedAt = c.getLong(2);
+                list.add(e);
+            }
+        } finally { c.close(); }
+        return list;
+    }
 
     // ===== Mood =====
     public static class MoodLog {
@@ -148,12 +523,51 @@ public class sqlite extends SQLiteOpenHelper {
         public int mood;
         public long updatedAt;
     }
+    // O registo e os agregados (mood_agg) mudam na mesma transação.
     public void upsertMood(String dateId, int mood, long updatedAt) {
+        SQLiteDatabase w = getWritableDatabase();
+        w.beginTransactionNonExclusive();
+        try {
+            Integer old = moodValue(w, dateId);
+            writeMood(w, dateId, mood, updatedAt);
+            if (old == null || old != mood) applyMoodAggregates(w, dateId, old, mood);
+            w.setTransactionSuccessful();
+        } finally { w.endTransaction(); }
+    }
+    private void writeMood(SQLiteDatabase w, String dateId, int mood, long updatedAt) {
+        if (tuned) {
+            SQLiteStatement st = statement(SQL_UPSERT_MOOD);
+            synchronized (st) {
+                st.bindString(1, dateId);
+                st.bindLong(2, mood);
+                st.bindLong(3, updatedAt);
+                st.executeInsert();
+                st.clearBindings();
+            }
+            return;
+        }
         ContentValues cv = new ContentValues();
         cv.put(C_MOOD_DATEID, dateId);
         cv.put(C_MOOD_VALUE, mood);
         cv.put(C_MOOD_UPDATED, updatedAt);
-        getWritableDatabase().insertWithOnConflict(T_MOOD, null, cv, SQLiteDatabase.CONFLICT_REPLACE);
+        w.insertWithOnConflict(T_MOOD, null, cv, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+    private static Integer moodValue(SQLiteDatabase db, String dateId) {
+        Cursor c = db.query(T_MOOD, new String[]{C_MOOD_VALUE},
+                C_MOOD_DATEID + "=?", new String[]{dateId}, null, null, null);
+        try {
+            return c.moveToFirst() ? c.getInt(0) : null;
+        } finally { c.close(); }
+    }
+    /** Vários registos de humor numa única transação. */
+    public void upsertMoods(List<MoodLog> logs) {
+        if (logs.isEmpty()) return;
+        SQLiteDatabase w = getWritableDatabase();
+        w.beginTransactionNonExclusive();
+        try {
+            for (MoodLog m : logs) upsertMood(m.dateId, m.mood, m.updatedAt);
+            w.setTransactionSuccessful();
+        } finally { w.endTransaction(); }
     }
     public MoodLog getMoodByDate(String dateId) {
         Cursor c = getReadableDatabase().query(T_MOOD,
@@ -187,35 +601,255 @@ public class sqlite extends SQLiteOpenHelper {
         return list;
     }
 
+    // ===== Mood aggregates =====
+    // Atualiza mood_agg para um registo novo (old == null) ou alterado: semana e mês por upsert,
+    // dias através do MoodAggregates.apply (acumulados e dias seguidos).
+    private static void applyMoodAggregates(SQLiteDatabase w, String dateId, Integer old, int mood) {
+        int delta = old == null ? mood : mood - old;
+        int added = old == null ? 1 : 0;
+        bumpMoodBucket(w, MoodAggregates.PERIOD_WEEK, MoodAggregates.weekKey(dateId), delta, added);
+        bumpMoodBucket(w, MoodAggregates.PERIOD_MONTH, MoodAggregates.monthKey(dateId), delta, added);
+        MoodAggregates.apply(new MoodDayStore(w), dateId, old, mood);
+    }
+
+    private static final String WHERE_DAY = C_AGG_PERIOD + "='" + MoodAggregates.PERIOD_DAY + "' AND " + C_AGG_BUCKET;
+
+    // Linhas de dia de mood_agg (usado dentro da transação do upsertMood).
+    private static final class MoodDayStore implements MoodAggregates.DayStore {
+        private final SQLiteDatabase w;
+
+        MoodDayStore(SQLiteDatabase w) { this.w = w; }
+
+        @Override public MoodAggregates.DayRow lastBefore(String dateId) {
+            return readDayRow(w, "<", dateId);
+        }
+
+        @Override public void insert(MoodAggregates.DayRow row) {
+            w.insertWithOnConflict(T_MOOD_AGG, null, dayValues(row), SQLiteDatabase.CONFLICT_REPLACE);
+        }
+
+        @Override public void setMood(String dateId, int mood) {
+            ContentValues cv = new ContentValues();
+            cv.put(C_AGG_SUM, mood);
+            w.update(T_MOOD_AGG, cv, WHERE_DAY + "=?", new String[]{dateId});
+        }
+
+        @Override public void addToCumulative(String fromDateId, long sum, int count) {
+            w.execSQL("UPDATE " + T_MOOD_AGG + " SET " +
+                    C_AGG_CUM_SUM + "=" + C_AGG_CUM_SUM + "+?," + C_AGG_CUM_COUNT + "=" + C_AGG_CUM_COUNT + "+?" +
+                    " WHERE " + WHERE_DAY + ">=?", new Object[]{sum, count, fromDateId});
+        }
+
+        @Override public boolean setStreak(String dateId, int streak) {
+            ContentValues cv = new ContentValues();
+            cv.put(C_AGG_STREAK, streak);
+            return w.update(T_MOOD_AGG, cv, WHERE_DAY + "=?", new String[]{dateId}) > 0;
+        }
+    }
+
+    // Último dia com bucket <op> dateId (op: "<" ou "<="), ou null.
+    private static MoodAggregates.DayRow readDayRow(SQLiteDatabase db, String op, String dateId) {
+        Cursor c = db.query(T_MOOD_AGG,
+                new String[]{C_AGG_BUCKET, C_AGG_SUM, C_AGG_CUM_SUM, C_AGG_CUM_COUNT, C_AGG_STREAK},
+                WHERE_DAY + op + "?", new String[]{dateId}, null, null, C_AGG_BUCKET + " DESC", "1");
+        try {
+            if (!c.moveToFirst()) return null;
+            return new MoodAggregates.DayRow(c.getString(0), c.getInt(1), c.getLong(2), c.getInt(3), c.getInt(4));
+        } finally { c.close(); }
+    }
+
+    private static ContentValues dayValues(MoodAggregates.DayRow row) {
+        ContentValues cv = new ContentValues();
+        cv.put(C_AGG_PERIOD, MoodAggregates.PERIOD_DAY);
+        cv.put(C_AGG_BUCKET, row.dateId);
+        cv.put(C_AGG_SUM, row.mood);
+        cv.put(C_AGG_COUNT, 1);
+        cv.put(C_AGG_CUM_SUM, row.cumSum);
+        cv.put(C_AGG_CUM_COUNT, row.cumCount);
+        cv.put(C_AGG_STREAK, row.streak);
+        return cv;
+    }
+
+    private static void bumpMoodBucket(SQLiteDatabase w, String period, String bucket, int delta, int added) {
+        w.execSQL("INSERT INTO " + T_MOOD_AGG +
+                "(" + C_AGG_PERIOD + "," + C_AGG_BUCKET + "," + C_AGG_SUM + "," + C_AGG_COUNT + ") VALUES(?,?,?,?)" +
+                " ON CONFLICT(" + C_AGG_PERIOD + "," + C_AGG_BUCKET + ") DO UPDATE SET " +
+                C_AGG_SUM + "=" + C_AGG_SUM + "+excluded." + C_AGG_SUM + "," +
+                C_AGG_COUNT + "=" + C_AGG_COUNT + "+excluded." + C_AGG_COUNT,
+                new Object[]{period, bucket, delta, added});
+    }
+
+    /** Soma e contagem dos humores entre dois dias (inclusive), a partir de duas linhas acumuladas. */
+    public MoodAggregates.Window getMoodWindow(String fromDateId, String toDateId) {
+        SQLiteDatabase r = getReadableDatabase();
+        return MoodAggregates.window(readDayRow(r, "<=", toDateId), readDayRow(r, "<", fromDateId));
+    }
+
+    /** Dias seguidos com humor até hoje (ou até ontem, se hoje ainda não foi registado). */
+    public int getMoodStreak(String todayId) {
+        Cursor c = getReadableDatabase().query(T_MOOD_AGG, new String[]{C_AGG_STREAK},
+                WHERE_DAY + " IN (?,?)",
+                new String[]{todayId, MoodAggregates.plusDays(todayId, -1)},
+                null, null, C_AGG_BUCKET + " DESC", "1");
+        try {
+            return c.moveToFirst() ? c.getInt(0) : 0;
+        } finally { c.close(); }
+    }
+
     // ===== Outbox =====
     public static class OutboxOperation {
         public String id;
         public String type;
         public String keyRef;
-        public String payloadJson;
+        public String payloadJson; // só em linhas antigas (antes do OutboxCodec)
+        public byte[] payload;     // OutboxCodec
         public long updatedAt;
         public String status;
         public int retries;
+        public long nextAttemptAt;
     }
-    public String enqueue(String type, String keyRef, String payloadJson, long updatedAt) {
+    // Diário e humor: last-writer-wins, substitui a operação por enviar do mesmo (type, keyRef).
+    // Reflexões, posts e comentários: append-only, cada chamada cria uma nova operação.
+    // O payload vem já codificado com OutboxCodec.
+    public String enqueue(String type, String keyRef, byte[] payload, long updatedAt) {
+        if (OP_UPSERT_DIARY.equals(type) || OP_UPSERT_MOOD.equals(type)) {
+            return tuned
+                    ? enqueueCoalescedCompiled(type, keyRef, payload, updatedAt)
+                    : enqueueCoalesced(type, keyRef, payload, updatedAt);
+        }
         String id = UUID.randomUUID().toString();
+        if (tuned) {
+            insertOutboxCompiled(id, type, keyRef, payload, updatedAt);
+            return id;
+        }
         ContentValues cv = new ContentValues();
         cv.put(C_OUTBOX_ID, id);
         cv.put(C_OUTBOX_TYPE, type);
         cv.put(C_OUTBOX_KEY, keyRef);
-        cv.put(C_OUTBOX_PAYLOAD, payloadJson);
+        cv.put(C_OUTBOX_PAYLOAD, "");
+        cv.put(C_OUTBOX_PAYLOAD_BLOB, payload);
         cv.put(C_OUTBOX_UPDATED, updatedAt);
         cv.put(C_OUTBOX_STATUS, STATUS_PENDING);
         cv.put(C_OUTBOX_RETRIES, 0);
         getWritableDatabase().insert(T_OUTBOX, null, cv);
         return id;
     }
+    private String enqueueCoalesced(String type, String keyRef, byte[] payload, long updatedAt) {
+        SQLiteDatabase w = getWritableDatabase();
+        w.beginTransaction();
+        try {
+            String id = null;
+            Cursor c = w.query(T_OUTBOX, new String[]{C_OUTBOX_ID},
+                    C_OUTBOX_TYPE + "=? AND " + C_OUTBOX_KEY + "=? AND " + C_OUTBOX_STATUS + " IN " + AWAITING_STATUSES,
+                    new String[]{type, keyRef}, null, null, null, "1");
+            try {
+                if (c.moveToFirst()) id = c.getString(0);
+            } finally { c.close(); }
+
+            ContentValues cv = new ContentValues();
+            cv.put(C_OUTBOX_PAYLOAD, "");
+            cv.put(C_OUTBOX_PAYLOAD_BLOB, payload);
+            cv.put(C_OUTBOX_UPDATED, updatedAt);
+            cv.put(C_OUTBOX_STATUS, STATUS_PENDING);
+            cv.put(C_OUTBOX_RETRIES, 0);
+            cv.put(C_OUTBOX_NEXT_ATTEMPT, 0);
+            if (id != null) {
+                w.update(T_OUTBOX, cv, C_OUTBOX_ID + "=?", new String[]{id});
+            } else {
+                id = UUID.randomUUID().toString();
+                cv.put(C_OUTBOX_ID, id);
+                cv.put(C_OUTBOX_TYPE, type);
+                cv.put(C_OUTBOX_KEY, keyRef);
+                w.insert(T_OUTBOX, null, cv);
+            }
+            w.setTransactionSuccessful();
+            return id;
+        } finally { w.endTransaction(); }
+    }
+    // Modo afinado: o índice único garante no máximo uma linha por enviar por (type, keyRef),
+    // por isso basta um UPDATE; só se não tocar em nenhuma linha é que se insere.
+    private String enqueueCoalescedCompiled(String type, String keyRef, byte[] payload, long updatedAt) {
+        SQLiteDatabase w = getWritableDatabase();
+        w.beginTransactionNonExclusive();
+        try {
+            SQLiteStatement st = statement(SQL_OUTBOX_COALESCE);
+            int updated;
+            synchronized (st) {
+                st.bindBlob(1, payload);
+                st.bindLong(2, updatedAt);
+                st.bindString(3, type);
+                st.bindString(4, keyRef);
+                updated = st.executeUpdateDelete();
+                st.clearBindings();
+            }
+            String id;
+            if (updated == 0) {
+                id = UUID.randomUUID().toString();
+                insertOutboxCompiled(id, type, keyRef, payload, updatedAt);
+            } else {
+                SQLiteStatement q = statement(SQL_OUTBOX_AWAITING_ID);
+                synchronized (q) {
+                    q.bindString(1, type);
+                    q.bindString(2, keyRef);
+                    id = q.simpleQueryForString();
+                    q.clearBindings();
+                }
+            }
+            w.setTransactionSuccessful();
+            return id;
+        } finally { w.endTransaction(); }
+    }
+    private void insertOutboxCompiled(String id, String type, String keyRef, byte[] payload, long updatedAt) {
+        SQLiteStatement st = statement(SQL_OUTBOX_INSERT);
+        synchronized (st) {
+            st.bindString(1, id);
+            st.bindString(2, type);
+            st.bindString(3, keyRef);
+            st.bindBlob(4, payload);
+            st.bindLong(5, updatedAt);
+            st.executeInsert();
+            st.clearBindings();
+        }
+    }
+    /** Apaga operações por enviar de diário/humor ultrapassadas por uma mais recente da mesma chave. */
+    public int compactOutbox() {
+        return compactOutbox(getWritableDatabase());
+    }
+    private static int compactOutbox(SQLiteDatabase w) {
+        return w.delete(T_OUTBOX,
+                C_OUTBOX_STATUS + " IN " + AWAITING_STATUSES + " AND " + C_OUTBOX_TYPE + " IN " + COALESCED_TYPES +
+                        " AND EXISTS (SELECT 1 FROM " + T_OUTBOX + " o2" +
+                        " WHERE o2." + C_OUTBOX_STATUS + " IN " + AWAITING_STATUSES +
+                        " AND o2." + C_OUTBOX_TYPE + "=" + T_OUTBOX + "." + C_OUTBOX_TYPE +
+                        " AND o2." + C_OUTBOX_KEY + "=" + T_OUTBOX + "." + C_OUTBOX_KEY +
+                        " AND (o2." + C_OUTBOX_UPDATED + ">" + T_OUTBOX + "." + C_OUTBOX_UPDATED +
+                        " OR (o2." + C_OUTBOX_UPDATED + "=" + T_OUTBOX + "." + C_OUTBOX_UPDATED +
+                        " AND o2." + C_OUTBOX_ID + ">" + T_OUTBOX + "." + C_OUTBOX_ID + ")))",
+                null);
+    }
+    /** Operações por enviar cuja próxima tentativa já chegou (PENDING, ou FAILED com backoff vencido). */
     public List<OutboxOperation> getPending(int limit) {
+        return getDue(System.currentTimeMillis(), limit);
+    }
+    public List<OutboxOperation> getDue(long now, int limit) {
+        return queryOutbox(C_OUTBOX_STATUS + " IN " + AWAITING_STATUSES + " AND " + C_OUTBOX_NEXT_ATTEMPT + "<=?",
+                new String[]{String.valueOf(now)}, limit);
+    }
+    /** Operações de um tipo ainda por enviar (com ou sem backoff), p.ex. para mostrar posts pendentes. */
+    public List<OutboxOperation> getAwaiting(String type, @Nullable String keyRef, int limit) {
+        if (keyRef == null) {
+            return queryOutbox(C_OUTBOX_STATUS + " IN " + AWAITING_STATUSES + " AND " + C_OUTBOX_TYPE + "=?",
+                    new String[]{type}, limit);
+        }
+        return queryOutbox(C_OUTBOX_STATUS + " IN " + AWAITING_STATUSES + " AND " + C_OUTBOX_TYPE + "=? AND " +
+                C_OUTBOX_KEY + "=?", new String[]{type, keyRef}, limit);
+    }
+    private List<OutboxOperation> queryOutbox(String where, String[] args, int limit) {
         ArrayList<OutboxOperation> list = new ArrayList<>();
         Cursor c = getReadableDatabase().query(T_OUTBOX,
-                new String[]{C_OUTBOX_ID, C_OUTBOX_TYPE, C_OUTBOX_KEY, C_OUTBOX_PAYLOAD, C_OUTBOX_UPDATED, C_OUTBOX_STATUS, C_OUTBOX_RETRIES},
-                C_OUTBOX_STATUS + "=?", new String[]{STATUS_PENDING},
-                null, null, C_OUTBOX_UPDATED + " ASC", String.valueOf(limit));
+                new String[]{C_OUTBOX_ID, C_OUTBOX_TYPE, C_OUTBOX_KEY, C_OUTBOX_PAYLOAD, C_OUTBOX_UPDATED,
+                        C_OUTBOX_STATUS, C_OUTBOX_RETRIES, C_OUTBOX_NEXT_ATTEMPT, C_OUTBOX_PAYLOAD_BLOB},
+                where, args, null, null, C_OUTBOX_UPDATED + " ASC", String.valueOf(limit));
         try {
             while (c.moveToNext()) {
                 OutboxOperation op = new OutboxOperation();
@@ -226,28 +860,351 @@ public class sqlite extends SQLiteOpenHelper {
                 op.updatedAt = c.getLong(4);
                 op.status = c.getString(5);
                 op.retries = c.getInt(6);
+                op.nextAttemptAt = c.getLong(7);
+                op.payload = c.isNull(8) ? null : c.getBlob(8);
                 list.add(op);
             }
         } finally { c.close(); }
         return list;
     }
-    public void markSent(String id) {
+    // O SyncWorker lê uma operação e só a marca depois de a escrita terminar; entretanto o
+    // enqueue de diário/humor pode ter reescrito a mesma linha (payload + updatedAt) com uma
+    // versão mais recente. Por isso as marcações só se aplicam se a linha ainda tiver o
+    // updatedAt lido; caso contrário fica PENDING e a versão nova é enviada na próxima página.
+    private static final String WHERE_SAME_VERSION = C_OUTBOX_ID + "=? AND " + C_OUTBOX_UPDATED + "=?";
+
+    /** Marca uma página inteira como enviada numa única transação. */
+    public void markSent(List<OutboxOperation> ops) {
+        if (ops.isEmpty()) return;
+        SQLiteDatabase w = getWritableDatabase();
+        long now = System.currentTimeMillis();
         ContentValues cv = new ContentValues();
         cv.put(C_OUTBOX_STATUS, STATUS_SENT);
-        getWritableDatabase().update(T_OUTBOX, cv, C_OUTBOX_ID + "=?", new String[]{id});
+        cv.put(C_OUTBOX_SENT_AT, now);
+        w.beginTransaction();
+        try {
+            for (OutboxOperation op : ops) {
+                if (tuned) markSentCompiled(op.id, op.updatedAt, now);
+                else w.update(T_OUTBOX, cv, WHERE_SAME_VERSION, sameVersion(op.id, op.updatedAt));
+            }
+            w.setTransactionSuccessful();
+        } finally { w.endTransaction(); }
+    }
+    private void markSentCompiled(String id, long updatedAt, long sentAt) {
+        SQLiteStatement st = statement(SQL_OUTBOX_SENT);
+        synchronized (st) {
+            st.bindLong(1, sentAt);
+            st.bindString(2, id);
+            st.bindLong(3, updatedAt);
+            st.executeUpdateDelete();
+            st.clearBindings();
+        }
+    }
+    private static String[] sameVersion(String id, long updatedAt) {
+        return new String[]{id, String.valueOf(updatedAt)};
     }
     public void markFailed(String id, int newRetries) {
+        getWritableDatabase().update(T_OUTBOX, failedValues(newRetries, System.currentTimeMillis()),
+                C_OUTBOX_ID + "=?", new String[]{id});
+    }
+    /**
+     * Regista uma falha em várias operações numa única transação: agenda a próxima
+     * tentativa com backoff exponencial + jitter, ou passa a DEAD ao fim de
+     * {@link SyncBackoff#MAX_ATTEMPTS} tentativas. Linhas reescritas entretanto
+     * (nova versão) não são tocadas.
+     */
+    public void markFailed(List<OutboxOperation> ops) {
+        if (ops.isEmpty()) return;
+        long now = System.currentTimeMillis();
+        SQLiteDatabase w = getWritableDatabase();
+        w.beginTransaction();
+        try {
+            for (OutboxOperation op : ops) {
+                w.update(T_OUTBOX, failedValues(op.retries + 1, now), WHERE_SAME_VERSION,
+                        sameVersion(op.id, op.updatedAt));
+            }
+            w.setTransactionSuccessful();
+        } finally { w.endTransaction(); }
+    }
+    /**
+     * Sem resposta do servidor (timeout): a falha é da ligação, não da operação. Reagenda com o
+     * backoff atual sem contar uma tentativa, para que umas horas offline não levem a DEAD.
+     */
+    public void markUnreachable(List<OutboxOperation> ops) {
+        if (ops.isEmpty()) return;
+        long now = System.currentTimeMillis();
+        SQLiteDatabase w = getWritableDatabase();
+        w.beginTransaction();
+        try {
+            for (OutboxOperation op : ops) {
+                ContentValues cv = new ContentValues();
+                cv.put(C_OUTBOX_STATUS, STATUS_FAILED);
+                cv.put(C_OUTBOX_NEXT_ATTEMPT, now + SyncBackoff.delayMs(op.retries + 1));
+                w.update(T_OUTBOX, cv, WHERE_SAME_VERSION, sameVersion(op.id, op.updatedAt));
+            }
+            w.setTransactionSuccessful();
+        } finally { w.endTransaction(); }
+    }
+    private static ContentValues failedValues(int attempts, long now) {
         ContentValues cv = new ContentValues();
-        cv.put(C_OUTBOX_STATUS, STATUS_FAILED);
-        cv.put(C_OUTBOX_RETRIES, newRetries);
-        getWritableDatabase().update(T_OUTBOX, cv, C_OUTBOX_ID + "=?", new String[]{id});
+        cv.put(C_OUTBOX_RETRIES, attempts);
+        if (attempts >= SyncBackoff.MAX_ATTEMPTS) {
+            cv.put(C_OUTBOX_STATUS, STATUS_DEAD);
+        } else {
+            cv.put(C_OUTBOX_STATUS, STATUS_FAILED);
+            cv.put(C_OUTBOX_NEXT_ATTEMPT, now + SyncBackoff.delayMs(attempts));
+        }
+        return cv;
     }
+    /** Envia diretamente para DEAD (payload ilegível ou tipo desconhecido: nunca vai passar). */
+    public void markDead(List<OutboxOperation> ops) {
+        if (ops.isEmpty()) return;
+        SQLiteDatabase w = getWritableDatabase();
+        w.beginTransaction();
+        try {
+            for (OutboxOperation op : ops) {
+                ContentValues cv = new ContentValues();
+                cv.put(C_OUTBOX_STATUS, STATUS_DEAD);
+                cv.put(C_OUTBOX_RETRIES, op.retries + 1);
+                w.update(T_OUTBOX, cv, WHERE_SAME_VERSION, sameVersion(op.id, op.updatedAt));
+            }
+            w.setTransactionSuccessful();
+        } finally { w.endTransaction(); }
+    }
+    /** Instante da próxima tentativa agendada (FAILED), ou -1 se não houver nenhuma. */
+    public long nextScheduledAttempt() {
+        Cursor c = getReadableDatabase().rawQuery(
+                "SELECT MIN(" + C_OUTBOX_NEXT_ATTEMPT + ") FROM " + T_OUTBOX + " WHERE " + C_OUTBOX_STATUS + "=?",
+                new String[]{STATUS_FAILED});
+        try { return c.moveToFirst() && !c.isNull(0) ? c.getLong(0) : -1L; }
+        finally { c.close(); }
+    }
+    /** Operações por enviar (PENDING + FAILED à espera de nova tentativa). */
     public int countPending() {
         Cursor c = getReadableDatabase().rawQuery(
-                "SELECT COUNT(*) FROM " + T_OUTBOX + " WHERE " + C_OUTBOX_STATUS + "=?", new String[]{STATUS_PENDING});
+                "SELECT COUNT(*) FROM " + T_OUTBOX + " WHERE " + C_OUTBOX_STATUS + " IN " + AWAITING_STATUSES, null);
         try { return c.moveToFirst() ? c.getInt(0) : 0; }
         finally { c.close(); }
     }
+    /**
+     * Devolve as operações DEAD à fila com as tentativas a zero (chamado no arranque da app).
+     * Diário/humor DEAD já ultrapassados por uma versão mais recente da mesma chave (por enviar
+     * ou já enviada) são apagados em vez de reenviados. Devolve quantas voltaram à fila.
+     */
+    public int requeueDead() {
+        SQLiteDatabase w = getWritableDatabase();
+        w.beginTransaction();
+        try {
+            w.delete(T_OUTBOX,
+                    C_OUTBOX_STATUS + "=? AND " + C_OUTBOX_TYPE + " IN " + COALESCED_TYPES +
+                            " AND EXISTS (SELECT 1 FROM " + T_OUTBOX + " o2" +
+                            " WHERE o2." + C_OUTBOX_TYPE + "=" + T_OUTBOX + "." + C_OUTBOX_TYPE +
+                            " AND o2." + C_OUTBOX_KEY + "=" + T_OUTBOX + "." + C_OUTBOX_KEY +
+                            " AND o2." + C_OUTBOX_ID + "<>" + T_OUTBOX + "." + C_OUTBOX_ID +
+                            " AND (o2." + C_OUTBOX_STATUS + " IN " + AWAITING_STATUSES +
+                            " OR o2." + C_OUTBOX_UPDATED + ">" + T_OUTBOX + "." + C_OUTBOX_UPDATED +
+                            " OR (o2." + C_OUTBOX_UPDATED + "=" + T_OUTBOX + "." + C_OUTBOX_UPDATED +
+                            " AND o2." + C_OUTBOX_ID + ">" + T_OUTBOX + "." + C_OUTBOX_ID + ")))",
+                    new String[]{STATUS_DEAD});
+            ContentValues cv = new ContentValues();
+            cv.put(C_OUTBOX_STATUS, STATUS_PENDING);
+            cv.put(C_OUTBOX_RETRIES, 0);
+            cv.put(C_OUTBOX_NEXT_ATTEMPT, 0);
+            int n = w.update(T_OUTBOX, cv, C_OUTBOX_STATUS + "=?", new String[]{STATUS_DEAD});
+            w.setTransactionSuccessful();
+            return n;
+        } finally { w.endTransaction(); }
+    }
+
+    // ===== Outbox: retenção =====
+    /** Apaga até batchSize linhas SENT enviadas antes de sentBefore. Devolve quantas apagou. */
+    public int purgeSent(long sentBefore, int batchSize) {
+        return getWritableDatabase().delete(T_OUTBOX,
+                C_OUTBOX_ID + " IN (SELECT " + C_OUTBOX_ID + " FROM " + T_OUTBOX +
+                        " WHERE " + C_OUTBOX_STATUS + "=? AND " + C_OUTBOX_SENT_AT + "<? LIMIT ?)",
+                new String[]{STATUS_SENT, String.valueOf(sentBefore), String.valueOf(batchSize)});
+    }
+    public int countOutboxRows() {
+        return (int) DatabaseUtils.queryNumEntries(getReadableDatabase(), T_OUTBOX);
+    }
+    /** Tamanho do ficheiro da BD em bytes (page_count * page_size). */
+    public long databaseSizeBytes() {
+        SQLiteDatabase r = getReadableDatabase();
+        return DatabaseUtils.longForQuery(r, "PRAGMA page_count", null)
+                * DatabaseUtils.longForQuery(r, "PRAGMA page_size", null);
+    }
+    /** Páginas livres (apagadas mas ainda no ficheiro). */
+    public long freePages() {
+        return DatabaseUtils.longForQuery(getReadableDatabase(), "PRAGMA freelist_count", null);
+    }
+    /**
+     * Garante auto_vacuum=INCREMENTAL. Em BD criadas antes da v6 isto obriga a um VACUUM
+     * completo (uma única vez); não pode correr dentro de uma transação nem na main thread.
+     */
+    public void ensureIncrementalAutoVacuum() {
+        SQLiteDatabase w = getWritableDatabase();
+        if (DatabaseUtils.longForQuery(w, "PRAGMA auto_vacuum", null) != 2) {
+            w.execSQL("PRAGMA auto_vacuum=INCREMENTAL");
+            w.execSQL("VACUUM");
+        }
+    }
+    /** Devolve ao sistema até maxPages páginas livres. */
+    public void incrementalVacuum(int maxPages) {
+        // incremental_vacuum devolve uma linha por página libertada: tem de ser lido até ao fim
+        Cursor c = getWritableDatabase().rawQuery("PRAGMA incremental_vacuum(" + maxPages + ")", null);
+        try {
+            while (c.moveToNext()) { /* consome */ }
+        } finally { c.close(); }
+    }
+
+    // ===== Sync cursor =====
+    /** Maior timestamp já espelhado deste nó, ou -1 se ainda não houve sincronização. */
+    public long getSyncCursorLong(String node) {
+        Cursor c = getReadableDatabase().query(T_SYNC_CURSOR, new String[]{C_CURSOR_POSITION},
+                C_CURSOR_NODE + "=?", new String[]{node}, null, null, null);
+        try { return c.moveToFirst() ? c.getLong(0) : -1L; }
+        finally { c.close(); }
+    }
+    /** Maior chave (ex.: dia yyyy-MM-dd) já espelhada deste nó, ou null. */
+    @Nullable
+    public String getSyncCursorKey(String node) {
+        Cursor c = getReadableDatabase().query(T_SYNC_CURSOR, new String[]{C_CURSOR_POSITION},
+                C_CURSOR_NODE + "=?", new String[]{node}, null, null, null);
+        try { return c.moveToFirst() ? c.getString(0) : null; }
+        finally { c.close(); }
+    }
+    /** Avança o cursor do nó (nunca recua). */
+    public void advanceSyncCursor(String node, long position) {
+        advanceSyncCursor(node, (Object) position);
+    }
+    public void advanceSyncCursor(String node, String position) {
+        advanceSyncCursor(node, (Object) position);
+    }
+    private void advanceSyncCursor(String node, Object position) {
+        getWritableDatabase().execSQL("INSERT INTO " + T_SYNC_CURSOR +
+                "(" + C_CURSOR_NODE + "," + C_CURSOR_POSITION + "," + C_CURSOR_UPDATED + ") VALUES(?,?,?)" +
+                " ON CONFLICT(" + C_CURSOR_NODE + ") DO UPDATE SET " +
+                C_CURSOR_POSITION + "=excluded." + C_CURSOR_POSITION + "," +
+                C_CURSOR_UPDATED + "=excluded." + C_CURSOR_UPDATED +
+                " WHERE excluded." + C_CURSOR_POSITION + ">" + T_SYNC_CURSOR + "." + C_CURSOR_POSITION,
+                new Object[]{node, position, System.currentTimeMillis()});
+    }
+
+    // ===== Community feed cache =====
+    /** Guarda/atualiza posts vindos do RTDB e marca-os como usados agora (LRU). */
+    public void cachePosts(List<CommunityActivity.Post> posts) {
+        if (posts.isEmpty()) return;
+        long now = System.currentTimeMillis();
+        SQLiteDatabase w = getWritableDatabase();
+        w.beginTransactionNonExclusive();
+        try {
+            for (CommunityActivity.Post p : posts) {
+                if (p.id == null) continue;
+                ContentValues cv = new ContentValues();
+                cv.put(C_FEED_ID, p.id);
+                cv.put(C_FEED_TEXT, p.text);
+                cv.put(C_FEED_AUTHOR, p.author);
+                cv.put(C_FEED_ANON, Boolean.TRUE.equals(p.anonymous) ? 1 : 0);
+                cv.put(C_FEED_UID, p.uid);
+                cv.put(C_FEED_CREATED, p.createdAt instanceof Long ? (Long) p.createdAt : 0L);
+                cv.put(C_FEED_ACCESS, now);
+                if (p.commentCount != null) cv.put(C_FEED_COMMENT_COUNT, p.commentCount);
+                else cv.putNull(C_FEED_COMMENT_COUNT);
+                w.insertWithOnConflict(T_FEED_POSTS, null, cv, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            w.setTransactionSuccessful();
+        } finally { w.endTransaction(); }
+    }
+    /** Posts em cache, do mais recente para o mais antigo. */
+    public List<CommunityActivity.Post> getCachedPosts(int limit) {
+        ArrayList<CommunityActivity.Post> out = new ArrayList<>();
+        Cursor c = getReadableDatabase().query(T_FEED_POSTS,
+                new String[]{C_FEED_ID, C_FEED_TEXT, C_FEED_AUTHOR, C_FEED_ANON, C_FEED_UID, C_FEED_CREATED,
+                        C_FEED_COMMENT_COUNT},
+                null, null, null, null, C_FEED_CREATED + " DESC," + C_FEED_ID + " DESC", String.valueOf(limit));
+        try {
+            while (c.moveToNext()) {
+                CommunityActivity.Post p = new CommunityActivity.Post();
+                p.id = c.getString(0);
+                p.text = c.getString(1);
+                p.author = c.getString(2);
+                p.anonymous = c.getInt(3) != 0;
+                p.uid = c.getString(4);
+                p.createdAt = c.getLong(5);
+                p.commentCount = c.isNull(6) ? null : c.getLong(6);
+                out.add(p);
+            }
+        } finally { c.close(); }
+        return out;
+    }
+    /** Remove um post (e os seus comentários) da cache. */
+    public void removeCachedPost(String postId) {
+        SQLiteDatabase w = getWritableDatabase();
+        w.beginTransactionNonExclusive();
+        try {
+            w.delete(T_FEED_COMMENTS, C_FEED_POST_ID + "=?", new String[]{postId});
+            w.delete(T_FEED_POSTS, C_FEED_ID + "=?", new String[]{postId});
+            w.setTransactionSuccessful();
+        } finally { w.endTransaction(); }
+    }
+    /** Substitui os comentários em cache de um post e marca o post como usado agora. */
+    public void cacheComments(String postId, List<CommunityActivity.Comment> comments) {
+        long now = System.currentTimeMillis();
+        SQLiteDatabase w = getWritableDatabase();
+        w.beginTransactionNonExclusive();
+        try {
+            w.delete(T_FEED_COMMENTS, C_FEED_POST_ID + "=?", new String[]{postId});
+            for (CommunityActivity.Comment cm : comments) {
+                if (cm.id == null) continue;
+                ContentValues cv = new ContentValues();
+                cv.put(C_FEED_ID, cm.id);
+                cv.put(C_FEED_POST_ID, postId);
+                cv.put(C_FEED_TEXT, cm.text);
+                cv.put(C_FEED_AUTHOR, cm.author);
+                cv.put(C_FEED_CREATED, cm.createdAt instanceof Long ? (Long) cm.createdAt : 0L);
+                cv.put(C_FEED_ACCESS, now);
+                w.insertWithOnConflict(T_FEED_COMMENTS, null, cv, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            ContentValues touch = new ContentValues();
+            touch.put(C_FEED_ACCESS, now);
+            w.update(T_FEED_POSTS, touch, C_FEED_ID + "=?", new String[]{postId});
+            w.setTransactionSuccessful();
+        } finally { w.endTransaction(); }
+    }
+    /** Comentários em cache de um post, por createdAt ASC. */
+    public List<CommunityActivity.Comment> getCachedComments(String postId) {
+        ArrayList<CommunityActivity.Comment> out = new ArrayList<>();
+        Cursor c = getReadableDatabase().query(T_FEED_COMMENTS,
+                new String[]{C_FEED_ID, C_FEED_TEXT, C_FEED_AUTHOR, C_FEED_CREATED},
+                C_FEED_POST_ID + "=?", new String[]{postId}, null, null, C_FEED_CREATED + " ASC");
+        try {
+            while (c.moveToNext()) {
+                CommunityActivity.Comment cm = new CommunityActivity.Comment();
+                cm.id = c.getString(0);
+                cm.text = c.getString(1);
+                cm.author = c.getString(2);
+                cm.createdAt = c.getLong(3);
+                out.add(cm);
+            }
+        } finally { c.close(); }
+        return out;
+    }
+    /**
+     * Aplica o limite LRU: mantém os maxPosts posts usados mais recentemente (os comentários
+     * dos posts removidos vão com eles) e no máximo maxComments comentários.
+     */
+    public void trimFeedCache(int maxPosts, int maxComments) {
+        SQLiteDatabase w = getWritableDatabase();
+        w.beginTransactionNonExclusive();
+        try {
+            w.delete(T_FEED_POSTS, C_FEED_ID + " NOT IN (SELECT " + C_FEED_ID + " FROM " + T_FEED_POSTS +
+                    " ORDER BY " + C_FEED_ACCESS + " DESC LIMIT ?)", new String[]{String.valueOf(maxPosts)});
+            w.delete(T_FEED_COMMENTS, C_FEED_POST_ID + " NOT IN (SELECT " + C_FEED_ID + " FROM " + T_FEED_POSTS + ")", null);
+            w.delete(T_FEED_COMMENTS, C_FEED_ID + " NOT IN (SELECT " + C_FEED_ID + " FROM " + T_FEED_COMMENTS +
+                    " ORDER BY " + C_FEED_ACCESS + " DESC LIMIT ?)", new String[]{String.valueOf(maxComments)});
+            w.setTransactionSuccessful();
+        } finally { w.endTransaction(); }
+    }
 
     // ===== Reflections (novo) =====
     public static class Reflection {
@@ -255,23 +1212,73 @@ public class sqlite extends SQLiteOpenHelper {
         public String dateId;
         public String text;
         public long updatedAt;
+        public String remoteKey; // chave push no RTDB (null se desconhecida)
     }
-    /** Insere uma reflexão (linha separada por reflexão). */
-    public String insertReflection(String dateId, String text, long updatedAt) {
-        String id = UUID.randomUUID().toString();
-        ContentValues cv = new ContentValues();
-        cv.put(C_REFL_ID, id);
-        cv.put(C_REFL_DATEID, dateId);
-        cv.put(C_REFL_TEXT, text);
-        cv.put(C_REFL_UPDATED, updatedAt);
-        getWritableDatabase().insert(T_REFLECTIONS, null, cv);
-        return id;
+    /**
+     * Insere uma reflexão se ainda não existir (mesmo dia + mesmo texto, pelo índice único
+     * do contentHash). Se já existir sem chave RTDB, guarda a chave recebida.
+     * Devolve true se criou uma linha nova.
+     */
+    public boolean upsertReflection(String dateId, String text, long updatedAt, @Nullable String remoteKey) {
+        String t = text.trim();
+        String hash = reflectionHash(dateId, t);
+        SQLiteStatement st = statement(SQL_REFL_INSERT);
+        long rowId;
+        synchronized (st) {
+            st.bindString(1, UUID.randomUUID().toString());
+            st.bindString(2, dateId);
+            st.bindString(3, t);
+            st.bindLong(4, updatedAt);
+            if (remoteKey != null) st.bindString(5, remoteKey); else st.bindNull(5);
+            st.bindString(6, hash);
+            rowId = st.executeInsert();
+            st.clearBindings();
+        }
+        if (rowId != -1) return true;
+        if (remoteKey != null) {
+            SQLiteStatement up = statement(SQL_REFL_SET_KEY);
+            synchronized (up) {
+                up.bindString(1, remoteKey);
+                up.bindString(2, hash);
+                up.executeUpdateDelete();
+                up.clearBindings();
+            }
+        }
+        return false;
+    }
+    /** Várias reflexões numa única transação. Devolve quantas eram novas. */
+    public int upsertReflections(List<Reflection> list) {
+        if (list.isEmpty()) return 0;
+        int inserted = 0;
+        SQLiteDatabase w = getWritableDatabase();
+        w.beginTransactionNonExclusive();
+        try {
+            for (Reflection r : list) {
+                if (upsertReflection(r.dateId, r.text, r.updatedAt, r.remoteKey)) inserted++;
+            }
+            w.setTransactionSuccessful();
+        } finally { w.endTransaction(); }
+        return inserted;
+    }
+    /** Identidade de conteúdo de uma reflexão: sha256 de dateId + texto (trim), em hex. */
+    static String reflectionHash(String dateId, String text) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(dateId.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+            md.update(text.trim().getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(64);
+            for (byte b : md.digest()) sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
     /** Todas as reflexões de um dia, por updatedAt ASC. */
     public List<Reflection> getReflectionsByDate(String dateId) {
         ArrayList<Reflection> out = new ArrayList<>();
         Cursor c = getReadableDatabase().query(T_REFLECTIONS,
-                new String[]{C_REFL_ID, C_REFL_DATEID, C_REFL_TEXT, C_REFL_UPDATED},
+                new String[]{C_REFL_ID, C_REFL_DATEID, C_REFL_TEXT, C_REFL_UPDATED, C_REFL_REMOTE_KEY},
                 C_REFL_DATEID + "=?", new String[]{dateId},
                 null, null, C_REFL_UPDATED + " ASC");
         try {
@@ -281,12 +1288,61 @@ public class sqlite extends SQLiteOpenHelper {
                 r.dateId = c.getString(1);
                 r.text = c.getString(2);
                 r.updatedAt = c.getLong(3);
+                r.remoteKey = c.getString(4);
                 out.add(r);
             }
         } finally { c.close(); }
         return out;
     }
 
+    /**
+     * Textos das reflexões entre dois dias (inclusive; null = sem limite), agrupados por dia.
+     * Uma só query (dateId ASC, updatedAt ASC) em vez de uma por dia.
+     */
+    public Map<String, List<String>> getReflectionsBetween(@Nullable String fromDay, @Nullable String toDay) {
+        Map<String, List<String>> out = new LinkedHashMap<>();
+        List<String> args = new ArrayList<>();
+        String where = "1=1" + dayRange(C_REFL_DATEID, fromDay, toDay, args);
+        Cursor c = getReadableDatabase().query(T_REFLECTIONS,
+                new String[]{C_REFL_DATEID, C_REFL_TEXT},
+                where, args.toArray(new String[0]),
+                null, null, C_REFL_DATEID + " ASC, " + C_REFL_UPDATED + " ASC");
+        try {
+            List<String> day = null;
+            String current = null;
+            while (c.moveToNext()) {
+                String d = c.getString(0);
+                if (!d.equals(current)) {
+                    current = d;
+                    day = new ArrayList<>();
+                    out.put(d, day);
+                }
+                day.add(c.getString(1));
+            }
+        } finally { c.close(); }
+        return out;
+    }
+
+    /**
+     * Dias com diário (com texto) ou reflexões entre dois dias (inclusive; null = sem limite),
+     * os mais recentes primeiro, no máximo "limit". Usa os índices de dateId das duas tabelas.
+     */
+    public List<String> getEntryDaysBetween(@Nullable String fromDay, @Nullable String toDay, int limit) {
+        ArrayList<String> out = new ArrayList<>();
+        List<String> args = new ArrayList<>();
+        String diary = "SELECT " + C_DIARY_DATEID + " AS d FROM " + T_DIARY +
+                " WHERE TRIM(" + C_DIARY_TEXT + ")<>''" + dayRange(C_DIARY_DATEID, fromDay, toDay, args);
+        String refl = "SELECT " + C_REFL_DATEID + " AS d FROM " + T_REFLECTIONS +
+                " WHERE 1=1" + dayRange(C_REFL_DATEID, fromDay, toDay, args);
+        args.add(String.valueOf(limit));
+        Cursor c = getReadableDatabase().rawQuery(
+                diary + " UNION " + refl + " ORDER BY d DESC LIMIT ?", args.toArray(new String[0]));
+        try {
+            while (c.moveToNext()) out.add(c.getString(0));
+        } finally { c.close(); }
+        return out;
+    }
+
     public List<String> getReflectionDaysLastNDays(int n) {
         ArrayList<String> out = new ArrayList<>();
         Cursor c = getReadableDatabase().rawQuery(
@@ -297,4 +1353,33 @@ public class sqlite extends SQLiteOpenHelper {
         } finally { c.close(); }
         return out;
     }
+
+    // ===== Helpers =====
+    // " AND col>=? AND col<=?" para os limites presentes (dias yyyy-MM-dd comparam como texto).
+    private static String dayRange(String col, @Nullable String fromDay, @Nullable String toDay, List<String> args) {
+        StringBuilder sb = new StringBuilder();
+        if (fromDay != null) { sb.append(" AND ").append(col).append(">=?"); args.add(fromDay); }
+        if (toDay != null) { sb.append(" AND ").append(col).append("<=?"); args.add(toDay); }
+        return sb.toString();
+    }
+
+    // O SQLite limita o número de parâmetros por query (999 nas versões antigas)
+    private static final int MAX_IN_ARGS = 500;
+
+    private static List<List<String>> chunks(Collection<String> values) {
+        List<List<String>> out = new ArrayList<>();
+        List<String> cur = new ArrayList<>();
+        for (String v : values) {
+            cur.add(v);
+            if (cur.size() == MAX_IN_ARGS) { out.add(cur); cur = new ArrayList<>(); }
+        }
+        if (!cur.isEmpty()) out.add(cur);
+        return out;
+    }
+
+    private static String placeholders(int n) {
+        StringBuilder sb = new StringBuilder(n * 2);
+        for (int i = 0; i < n; i++) sb.append(i == 0 ? "?" : ",?");
+        return sb.toString();
+    }
 }
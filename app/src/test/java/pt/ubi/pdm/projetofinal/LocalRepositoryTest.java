@@ -0,0 +1,48 @@
+package pt.ubi.pdm.projetofinal;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Entrega de resultados e erros do LocalRepository (executores síncronos, sem base de dados).
+ */
+public class LocalRepositoryTest {
+
+    private static LocalRepository repo() {
+        return new LocalRepository(null, Runnable::run, Runnable::run, Runnable::run);
+    }
+
+    @Test
+    public void throwingCommand_isReported_andOnDoneDoesNotRun() {
+        List<Exception> errors = new ArrayList<>();
+        boolean[] done = {false};
+        repo().write(db -> { throw new IllegalStateException("disco cheio"); },
+                () -> done[0] = true, errors::add);
+        assertFalse(done[0]);
+        assertEquals(1, errors.size());
+        assertEquals("disco cheio", errors.get(0).getMessage());
+    }
+
+    @Test
+    public void throwingQuery_isReported_insteadOfTheResult() {
+        List<Exception> errors = new ArrayList<>();
+        List<Object> results = new ArrayList<>();
+        repo().read(db -> { throw new IllegalStateException("tabela em falta"); }, results::add, errors::add);
+        assertTrue(results.isEmpty());
+        assertEquals(1, errors.size());
+    }
+
+    @Test
+    public void successfulWrite_deliversResult_andNoError() {
+        List<Exception> errors = new ArrayList<>();
+        List<Integer> results = new ArrayList<>();
+        repo().write(db -> 42, results::add, errors::add);
+        assertEquals(1, results.size());
+        assertEquals(42, (int) results.get(0));
+        assertTrue(errors.isEmpty());
+    }
+}
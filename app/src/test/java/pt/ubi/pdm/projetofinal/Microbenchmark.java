@@ -0,0 +1,30 @@
+package pt.ubi.pdm.projetofinal;
+
+/**
+ * Comparação de dois caminhos em ns/op, partilhada pelos *BenchmarkTest.
+ * Os *BenchmarkTest ficam fora do ./gradlew test normal (regra em app/build.gradle.kts) e
+ * correm com ./gradlew test -Pbenchmarks. Imprime os tempos; não falha por eles.
+ */
+final class Microbenchmark {
+
+    // Uma operação medida; devolve um valor que entra no "sink" (o JIT não a pode eliminar).
+    interface Op { long run(int i) throws Exception; }
+
+    private Microbenchmark() {}
+
+    static void compare(String nameA, Op a, String nameB, Op b, int warmup, int iterations) throws Exception {
+        long sink = 0;
+        for (int i = 0; i < warmup; i++) sink += a.run(i) + b.run(i);
+
+        long t0 = System.nanoTime();
+        for (int i = 0; i < iterations; i++) sink += a.run(i);
+        long aNs = System.nanoTime() - t0;
+
+        t0 = System.nanoTime();
+        for (int i = 0; i < iterations; i++) sink += b.run(i);
+        long bNs = System.nanoTime() - t0;
+
+        System.out.printf("%s: %.1f ns/op | %s: %.1f ns/op (sink=%d)%n",
+                nameA, aNs / (double) iterations, nameB, bNs / (double) iterations, sink);
+    }
+}
@@ -0,0 +1,187 @@
+package pt.ubi.pdm.projetofinal;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Chaves dos períodos, médias e atualização incremental dos agregados de humor
+ * (com um DayStore em memória no lugar da tabela mood_agg).
+ */
+public class MoodAggregatesTest {
+
+    @Test
+    public void weekKey_usesIsoWeekYear() {
+        assertEquals("2025-W03", MoodAggregates.weekKey("2025-01-15"));
+        // 29/12/2025 (segunda) já pertence à semana 1 de 2026
+        assertEquals("2026-W01", MoodAggregates.weekKey("2025-12-29"));
+        // 1/1/2027 (sexta) ainda é da última semana de 2026
+        assertEquals("2026-W53", MoodAggregates.weekKey("2027-01-01"));
+    }
+
+    @Test
+    public void monthKey_andPlusDays() {
+        assertEquals("2025-02", MoodAggregates.monthKey("2025-02-28"));
+        assertEquals("2025-03-01", MoodAggregates.plusDays("2025-02-28", 1));
+        assertEquals("2024-12-31", MoodAggregates.plusDays("2025-01-01", -1));
+    }
+
+    @Test
+    public void window_percentMatchesScale() {
+        assertEquals(0, new MoodAggregates.Window(0, 0).percent());
+        assertEquals(0, new MoodAggregates.Window(3, 3).percent());
+        assertEquals(100, new MoodAggregates.Window(10, 2).percent());
+        // média 3.5 → 62.5% → 63
+        assertEquals(63, new MoodAggregates.Window(7, 2).percent());
+        assertEquals(3.5, new MoodAggregates.Window(7, 2).average(), 1e-9);
+    }
+
+    @Test
+    public void consecutiveDays_accumulateAndExtendStreak() {
+        MemoryStore s = new MemoryStore();
+        s.put("2025-03-01", 3);
+        s.put("2025-03-02", 4);
+        s.put("2025-03-03", 5);
+        assertRow(s.row("2025-03-03"), 12, 3, 3);
+        assertEquals(9, s.window("2025-03-02", "2025-03-03").sum);
+        assertEquals(2, s.window("2025-03-02", "2025-03-03").count);
+    }
+
+    @Test
+    public void gap_breaksStreak() {
+        MemoryStore s = new MemoryStore();
+        s.put("2025-03-01", 3);
+        s.put("2025-03-02", 3);
+        s.put("2025-03-05", 2);
+        assertRow(s.row("2025-03-02"), 6, 2, 2);
+        assertRow(s.row("2025-03-05"), 8, 3, 1);
+    }
+
+    @Test
+    public void insertInMiddle_updatesLaterCumulativesAndJoinsStreaks() {
+        MemoryStore s = new MemoryStore();
+        s.put("2025-03-01", 1);
+        s.put("2025-03-03", 5);
+        s.put("2025-03-04", 4);
+        s.put("2025-03-06", 2);
+        assertEquals(2, s.row("2025-03-04").streak);
+
+        // O dia 2 liga o 1 ao 3–4; o 6 continua separado
+        s.put("2025-03-02", 3);
+        assertRow(s.row("2025-03-02"), 4, 2, 2);
+        assertRow(s.row("2025-03-03"), 9, 3, 3);
+        assertRow(s.row("2025-03-04"), 13, 4, 4);
+        assertRow(s.row("2025-03-06"), 15, 5, 1);
+
+        MoodAggregates.Window w = s.window("2025-03-02", "2025-03-05");
+        assertEquals(12, w.sum);
+        assertEquals(3, w.count);
+    }
+
+    @Test
+    public void changedMood_shiftsSumAndLaterCumulativesOnly() {
+        MemoryStore s = new MemoryStore();
+        s.put("2025-03-01", 2);
+        s.put("2025-03-02", 2);
+        s.put("2025-03-03", 2);
+        s.put("2025-03-02", 5);
+        assertRow(s.row("2025-03-01"), 2, 1, 1);
+        assertRow(s.row("2025-03-02"), 7, 2, 2);
+        assertRow(s.row("2025-03-03"), 9, 3, 3);
+        assertEquals(5, s.row("2025-03-02").mood);
+
+        // Mesmo valor: nada muda
+        s.put("2025-03-02", 5);
+        assertRow(s.row("2025-03-03"), 9, 3, 3);
+    }
+
+    @Test
+    public void windows_withoutRecordsAtTheEdges() {
+        MemoryStore s = new MemoryStore();
+        assertEquals(0, s.window("2025-03-01", "2025-03-07").count);
+        s.put("2025-03-04", 4);
+        assertEquals(4, s.window("2025-03-01", "2025-03-07").sum);
+        assertEquals(0, s.window("2025-03-05", "2025-03-07").count);
+        assertEquals(0, s.window("2025-02-01", "2025-03-03").count);
+    }
+
+    @Test
+    public void randomOrder_matchesFullRebuild() {
+        Random rnd = new Random(1);
+        MemoryStore s = new MemoryStore();
+        TreeMap<String, Integer> moods = new TreeMap<>();
+        for (int i = 0; i < 2_000; i++) {
+            String day = MoodAggregates.plusDays("2025-12-01", rnd.nextInt(60));
+            int mood = 1 + rnd.nextInt(5);
+            s.put(day, mood);
+            moods.put(day, mood);
+        }
+        MoodAggregates.DayRow prev = null;
+        for (Map.Entry<String, Integer> e : moods.entrySet()) {
+            prev = MoodAggregates.follow(prev, e.getKey(), e.getValue());
+            MoodAggregates.DayRow got = s.row(e.getKey());
+            assertEquals(prev.mood, got.mood);
+            assertRow(got, prev.cumSum, prev.cumCount, prev.streak);
+        }
+    }
+
+    private static void assertRow(MoodAggregates.DayRow row, long cumSum, int cumCount, int streak) {
+        assertNotNull(row);
+        assertEquals(cumSum, row.cumSum);
+        assertEquals(cumCount, row.cumCount);
+        assertEquals(streak, row.streak);
+    }
+
+    // mood_agg (linhas de dia) em memória, com o mesmo contrato do MoodDayStore do sqlite.
+    private static final class MemoryStore implements MoodAggregates.DayStore {
+        private final TreeMap<String, MoodAggregates.DayRow> rows = new TreeMap<>();
+
+        void put(String dateId, int mood) {
+            MoodAggregates.DayRow cur = rows.get(dateId);
+            MoodAggregates.apply(this, dateId, cur == null ? null : cur.mood, mood);
+        }
+
+        MoodAggregates.DayRow row(String dateId) {
+            return rows.get(dateId);
+        }
+
+        MoodAggregates.Window window(String from, String to) {
+            Map.Entry<String, MoodAggregates.DayRow> upTo = rows.floorEntry(to);
+            Map.Entry<String, MoodAggregates.DayRow> before = rows.lowerEntry(from);
+            return MoodAggregates.window(upTo == null ? null : upTo.getValue(),
+                    before == null ? null : before.getValue());
+        }
+
+        @Override public MoodAggregates.DayRow lastBefore(String dateId) {
+            Map.Entry<String, MoodAggregates.DayRow> e = rows.lowerEntry(dateId);
+            return e == null ? null : e.getValue();
+        }
+
+        @Override public void insert(MoodAggregates.DayRow row) {
+            rows.put(row.dateId, row);
+        }
+
+        @Override public void setMood(String dateId, int mood) {
+            MoodAggregates.DayRow r = rows.get(dateId);
+            rows.put(dateId, new MoodAggregates.DayRow(dateId, mood, r.cumSum, r.cumCount, r.streak));
+        }
+
+        @Override public void addToCumulative(String fromDateId, long sum, int count) {
+            for (MoodAggregates.DayRow r : rows.tailMap(fromDateId, true).values()) {
+                rows.put(r.dateId, new MoodAggregates.DayRow(r.dateId, r.mood,
+                        r.cumSum + sum, r.cumCount + count, r.streak));
+            }
+        }
+
+        @Override public boolean setStreak(String dateId, int streak) {
+            MoodAggregates.DayRow r = rows.get(dateId);
+            if (r == null) return false;
+            rows.put(dateId, new MoodAggregates.DayRow(dateId, r.mood, r.cumSum, r.cumCount, streak));
+            return true;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package pt.ubi.pdm.projetofinal;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * Microbenchmark: codec binário vs. o caminho antigo (JSON concatenado à mão + JSONObject).
+ * Mede encode + decode de um payload de diário (Microbenchmark; só com ./gradlew test -Pbenchmarks).
+ * A equivalência dos dois caminhos está no OutboxCodecTest.
+ */
+public class OutboxCodecBenchmarkTest {
+
+    private static final int WARMUP = 20_000;
+    private static final int ITERATIONS = 200_000;
+    private static final String DATE = "2025-01-31";
+    private static final String TEXT =
+            "Hoje acordei cedo, fui caminhar e senti-me mais calmo. Amanhã quero repetir.";
+
+    @Test
+    public void codec_vs_jsonObject() throws Exception {
+        Microbenchmark.compare("OutboxCodec", OutboxCodecBenchmarkTest::binary,
+                "JSONObject", OutboxCodecBenchmarkTest::json, WARMUP, ITERATIONS);
+    }
+
+    private static long binary(long createdAt) {
+        OutboxCodec.Payload p = OutboxCodec.decode(OutboxCodec.encodeDiary(DATE, TEXT, createdAt));
+        return p.createdAt + p.text.length();
+    }
+
+    // Caminho antigo: WriteDiaryActivity montava a string, SyncWorker fazia o parse.
+    private static long json(long createdAt) throws Exception {
+        String q = "{\"dateId\":\"" + DATE + "\"," +
+                "\"text\":" + quoteJson(TEXT) + "," +
+                "\"createdAt\":" + createdAt + "}";
+        JSONObject j = new JSONObject(q);
+        j.getString("dateId");
+        return j.optLong("createdAt", 0L) + j.optString("text", "").length();
+    }
+
+    private static String quoteJson(String s) {
+        return "\"" + s.replace("\\","\\\\").replace("\"","\\\"") + "\"";
+    }
+}
@@ -0,0 +1,158 @@
+package pt.ubi.pdm.projetofinal;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes do codec binário dos payloads da outbox.
+ */
+public class OutboxCodecTest {
+
+    @Test
+    public void diary_roundTrip() {
+        OutboxCodec.Payload p = OutboxCodec.decode(
+                OutboxCodec.encodeDiary("2025-01-31", "Hoje correu bem.", 1738281600000L));
+        assertEquals(sqlite.OP_UPSERT_DIARY, p.type);
+        assertEquals("2025-01-31", p.dateId);
+        assertEquals("Hoje correu bem.", p.text);
+        assertEquals(1738281600000L, p.createdAt);
+    }
+
+    @Test
+    public void mood_roundTrip() {
+        OutboxCodec.Payload p = OutboxCodec.decode(OutboxCodec.encodeMood("2025-02-01", 4, 42L));
+        assertEquals(sqlite.OP_UPSERT_MOOD, p.type);
+        assertEquals("2025-02-01", p.dateId);
+        assertEquals(4, p.mood);
+        assertNull(p.text);
+        assertEquals(42L, p.createdAt);
+    }
+
+    @Test
+    public void reflection_roundTrip() {
+        OutboxCodec.Payload p = OutboxCodec.decode(
+                OutboxCodec.encodeReflection("2025-02-02", "ok", -1L, "-NxAbC123"));
+        assertEquals(sqlite.OP_UPSERT_REFLECTION, p.type);
+        assertEquals("ok", p.text);
+        assertEquals(-1L, p.createdAt);
+        assertEquals("-NxAbC123", p.remoteKey);
+    }
+
+    @Test
+    public void reflection_withoutKey() {
+        OutboxCodec.Payload p = OutboxCodec.decode(OutboxCodec.encodeReflection("2025-02-02", "ok", 1L, null));
+        assertNull(p.remoteKey);
+    }
+
+    @Test
+    public void post_roundTrip() {
+        OutboxCodec.Payload p = OutboxCodec.decode(
+                OutboxCodec.encodePost("-NpPost1", "Olá a todos", "Ana", "uid-1", true, 99L));
+        assertEquals(sqlite.OP_CREATE_POST, p.type);
+        assertEquals("-NpPost1", p.postId);
+        assertEquals("-NpPost1", p.remoteKey);
+        assertEquals("Olá a todos", p.text);
+        assertEquals("Ana", p.author);
+        assertEquals("uid-1", p.uid);
+        assertTrue(p.anonymous);
+        assertEquals(99L, p.createdAt);
+    }
+
+    @Test
+    public void comment_roundTrip() {
+        OutboxCodec.Payload p = OutboxCodec.decode(
+                OutboxCodec.encodeComment("-NpPost1", "-NcCom1", "Força!", "Rui", 5L));
+        assertEquals(sqlite.OP_CREATE_COMMENT, p.type);
+        assertEquals("-NpPost1", p.postId);
+        assertEquals("-NcCom1", p.remoteKey);
+        assertEquals("Força!", p.text);
+        assertEquals("Rui", p.author);
+        assertFalse(p.anonymous);
+    }
+
+    @Test
+    public void decode_acceptsVersion1Reflection() {
+        // v1 = v2 sem o campo da chave (último byte: comprimento 0)
+        byte[] v2 = OutboxCodec.encodeReflection("2025-02-02", "antiga", 7L, null);
+        byte[] v1 = java.util.Arrays.copyOf(v2, v2.length - 1);
+        v1[0] = 1;
+        OutboxCodec.Payload p = OutboxCodec.decode(v1);
+        assertEquals(sqlite.OP_UPSERT_REFLECTION, p.type);
+        assertEquals("antiga", p.text);
+        assertEquals(7L, p.createdAt);
+        assertNull(p.remoteKey);
+    }
+
+    @Test
+    public void text_keepsQuotesNewlinesAndControlChars() {
+        String text = "Disse \"olá\"\\\n\tlinha 2\r\u0000\u001f fim 😄 ção";
+        OutboxCodec.Payload p = OutboxCodec.decode(OutboxCodec.encodeDiary("2025-03-01", text, 1L));
+        assertEquals(text, p.text);
+    }
+
+    @Test
+    public void diary_matchesLegacyJsonPath() throws Exception {
+        // Caminho antigo: WriteDiaryActivity montava a string, SyncWorker fazia o parse
+        String text = "Hoje acordei cedo, fui caminhar e senti-me mais \"calmo\". Amanhã quero repetir.";
+        String q = "{\"dateId\":\"2025-01-31\"," +
+                "\"text\":\"" + text.replace("\\", "\\\\").replace("\"", "\\\"") + "\"," +
+                "\"createdAt\":7}";
+        JSONObject j = new JSONObject(q);
+
+        OutboxCodec.Payload p = OutboxCodec.decode(OutboxCodec.encodeDiary("2025-01-31", text, 7L));
+        assertEquals(j.getString("dateId"), p.dateId);
+        assertEquals(j.optString("text", ""), p.text);
+        assertEquals(j.optLong("createdAt", 0L), p.createdAt);
+    }
+
+    @Test
+    public void text_emptyAndNull() {
+        assertEquals("", OutboxCodec.decode(OutboxCodec.encodeDiary("2025-03-01", "", 1L)).text);
+        assertEquals("", OutboxCodec.decode(OutboxCodec.encodeDiary("2025-03-01", null, 1L)).text);
+    }
+
+    @Test
+    public void text_largerThan64KiB() {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 200_000) sb.append("palavra ");
+        String text = sb.toString();
+        assertEquals(text, OutboxCodec.decode(OutboxCodec.encodeDiary("2025-03-01", text, 1L)).text);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsUnknownVersion() {
+        byte[] data = OutboxCodec.encodeMood("2025-02-01", 3, 1L);
+        data[0] = 99;
+        OutboxCodec.decode(data);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsUnknownType() {
+        byte[] data = OutboxCodec.encodeMood("2025-02-01", 3, 1L);
+        data[1] = 77;
+        OutboxCodec.decode(data);
+    }
+
+    @Test
+    public void decode_rejectsTruncatedAndTrailingBytes() {
+        byte[] data = OutboxCodec.encodeDiary("2025-02-01", "texto", 1L);
+        for (int len = 0; len < data.length; len++) {
+            byte[] cut = java.util.Arrays.copyOf(data, len);
+            try {
+                OutboxCodec.decode(cut);
+                fail("aceitou payload truncado com " + len + " bytes");
+            } catch (IllegalArgumentException expected) { }
+        }
+        try {
+            OutboxCodec.decode(java.util.Arrays.copyOf(data, data.length + 1));
+            fail("aceitou bytes a mais");
+        } catch (IllegalArgumentException expected) { }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void encode_rejectsMissingDateId() {
+        OutboxCodec.encodeDiary(null, "x", 1L);
+    }
+}
@@ -0,0 +1,43 @@
+package pt.ubi.pdm.projetofinal;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static pt.ubi.pdm.projetofinal.PdfTextLayoutTest.LONG_TEXT;
+import static pt.ubi.pdm.projetofinal.PdfTextLayoutTest.PROPORTIONAL;
+import static pt.ubi.pdm.projetofinal.PdfTextLayoutTest.legacyWrap;
+
+/**
+ * Microbenchmark: PdfTextLayout vs. a quebra antiga do PDF (split + StringBuilder + medir a linha
+ * candidata inteira a cada palavra). A medição simula o Paint com larguras por carácter
+ * (Microbenchmark; só com ./gradlew test -Pbenchmarks). A equivalência das linhas está no PdfTextLayoutTest.
+ */
+public class PdfTextLayoutBenchmarkTest {
+
+    private static final int WARMUP = 2_000;
+    private static final int ITERATIONS = 20_000;
+    private static final float MAX_WIDTH = 515f;
+
+    @Test
+    public void layout_vs_legacyWrap() throws Exception {
+        PdfTextLayout layout = new PdfTextLayout(PROPORTIONAL);
+        Microbenchmark.compare("PdfTextLayout", i -> offsets(layout),
+                "legado", i -> legacy(), WARMUP, ITERATIONS);
+    }
+
+    private static long offsets(PdfTextLayout layout) {
+        long[] acc = {0};
+        layout.layout(LONG_TEXT, MAX_WIDTH, (t, s, e) -> acc[0] += e - s, null);
+        return acc[0];
+    }
+
+    private static long legacy() {
+        List<String> lines = new ArrayList<>();
+        legacyWrap(LONG_TEXT, MAX_WIDTH, lines);
+        long acc = 0;
+        for (String l : lines) acc += l.length();
+        return acc;
+    }
+}
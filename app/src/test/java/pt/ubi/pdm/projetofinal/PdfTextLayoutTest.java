@@ -0,0 +1,116 @@
+package pt.ubi.pdm.projetofinal;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Quebra de linhas do PDF com uma medição fixa (1 unidade por carácter).
+ */
+public class PdfTextLayoutTest {
+
+    private static final PdfTextLayout LAYOUT = new PdfTextLayout((t, s, e) -> e - s);
+
+    @Test
+    public void words_wrapWithinWidth() {
+        List<String> lines = lines("o dia correu bem hoje", 10);
+        assertEquals(3, lines.size());
+        assertEquals("o dia", lines.get(0));
+        assertEquals("correu bem", lines.get(1));
+        assertEquals("hoje", lines.get(2));
+        for (String l : lines) assertTrue(l.length() <= 10);
+    }
+
+    @Test
+    public void longWord_isSplitIntoChunksThatFit() {
+        List<String> lines = lines("ver https://exemplo.pt/abc fim", 8);
+        assertEquals("ver", lines.get(0));
+        assertEquals("https://", lines.get(1));
+        assertEquals("exemplo.", lines.get(2));
+        assertEquals("pt/abc", lines.get(3));
+        assertEquals("fim", lines.get(4));
+        assertEquals(5, lines.size());
+    }
+
+    @Test
+    public void paragraphs_areBrokenSeparately() {
+        int[] paragraphs = {0};
+        List<String> lines = new ArrayList<>();
+        int n = LAYOUT.layout("um dois\n\ntrês", 20,
+                (t, s, e) -> lines.add(t.subSequence(s, e).toString()),
+                () -> paragraphs[0]++);
+        assertEquals(2, n);
+        assertEquals(3, paragraphs[0]);   // inclui o parágrafo vazio do meio
+        assertEquals("um dois", lines.get(0));
+        assertEquals("três", lines.get(1));
+    }
+
+    @Test
+    public void blankText_hasNoLines() {
+        assertTrue(lines("   \t ", 10).isEmpty());
+    }
+
+    @Test
+    public void longText_matchesLegacyWrap() {
+        PdfTextLayout layout = new PdfTextLayout(PROPORTIONAL);
+        List<String> expected = new ArrayList<>();
+        legacyWrap(LONG_TEXT, 515f, expected);
+        List<String> actual = new ArrayList<>();
+        layout.layout(LONG_TEXT, 515f, (t, s, e) -> actual.add(t.subSequence(s, e).toString()), null);
+        assertEquals(expected, actual);
+    }
+
+    private static List<String> lines(String text, float width) {
+        List<String> out = new ArrayList<>();
+        LAYOUT.layout(text, width, (t, s, e) -> out.add(t.subSequence(s, e).toString()), null);
+        return out;
+    }
+
+    // ===== Referência: quebra antiga (também usada pelo PdfTextLayoutBenchmarkTest) =====
+
+    // Largura "proporcional": estreitas, largas e o resto a 6.5
+    static final PdfTextLayout.Measurer PROPORTIONAL = (t, s, e) -> {
+        float w = 0f;
+        for (int i = s; i < e; i++) {
+            char c = t.charAt(i);
+            w += c == ' ' || c == 'i' || c == 'l' ? 3.5f : c == 'm' || c == 'M' ? 10f : 6.5f;
+        }
+        return w;
+    };
+
+    // Entrada longa de diário: vários parágrafos, espaços simples (o antigo normalizava-os).
+    static final String LONG_TEXT = buildLongText();
+
+    // Caminho antigo (PdfExporter.drawParagraph/drawWrapped), com drawText → lista de linhas.
+    static void legacyWrap(String text, float maxWidth, List<String> out) {
+        for (String p : text.split("\\n")) {
+            String[] words = p.trim().isEmpty() ? new String[0] : p.split("\\s+");
+            StringBuilder line = new StringBuilder();
+            for (String w : words) {
+                String cand = (line.length() == 0) ? w : line + " " + w;
+                if (PROPORTIONAL.measure(cand, 0, cand.length()) > maxWidth) {
+                    out.add(line.toString());
+                    line = new StringBuilder(w);
+                } else {
+                    line = new StringBuilder(cand);
+                }
+            }
+            if (line.length() > 0) out.add(line.toString());
+        }
+    }
+
+    private static String buildLongText() {
+        String p = "Hoje acordei cedo, fui caminhar junto ao rio e senti-me mais calmo do que ontem. " +
+                "Falei com a minha irmã ao telefone e combinámos almoçar no domingo. " +
+                "À tarde tive uma reunião longa mas correu melhor do que esperava.";
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 12; i++) {
+            if (i > 0) sb.append('\n');
+            sb.append(p);
+        }
+        return sb.toString();
+    }
+}
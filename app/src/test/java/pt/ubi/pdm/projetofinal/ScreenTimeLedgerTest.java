@@ -0,0 +1,89 @@
+package pt.ubi.pdm.projetofinal;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Contas do tempo de ecrã a partir de eventos (sem UsageStatsManager).
+ */
+public class ScreenTimeLedgerTest {
+
+    private static final long DAY = 1_000_000L;
+    private static final long MIN = 60_000L;
+    private static final String MAIN = "MainActivity";
+
+    private static ScreenTimeLedger ledger() {
+        ScreenTimeLedger l = new ScreenTimeLedger("pt.ubi.pdm.projetofinal");
+        l.reset(DAY);
+        return l;
+    }
+
+    @Test
+    public void closedAndOpenSessions_areSummed() {
+        ScreenTimeLedger l = ledger();
+        l.onForeground("org.exemplo.jornal", MAIN, DAY + MIN);
+        l.onBackground("org.exemplo.jornal", MAIN, DAY + 11 * MIN);
+        l.onForeground("org.exemplo.musica", MAIN, DAY + 20 * MIN);
+        assertEquals(10 * MIN + 5 * MIN, l.total(DAY + 25 * MIN));
+    }
+
+    @Test
+    public void excludedPackages_andShortUse_doNotCount() {
+        ScreenTimeLedger l = ledger();
+        l.onForeground("com.android.settings", MAIN, DAY);
+        l.onBackground("com.android.settings", MAIN, DAY + 30 * MIN);
+        l.onForeground("pt.ubi.pdm.projetofinal", MAIN, DAY);
+        l.onBackground("pt.ubi.pdm.projetofinal", MAIN, DAY + 30 * MIN);
+        l.onForeground("org.exemplo.launcher3", MAIN, DAY);
+        l.onBackground("org.exemplo.launcher3", MAIN, DAY + 30 * MIN);
+        l.onForeground("org.exemplo.jornal", MAIN, DAY);
+        l.onBackground("org.exemplo.jornal", MAIN, DAY + 10_000L);   // abaixo de MIN_PACKAGE_MS
+        assertEquals(0L, l.total(DAY + 40 * MIN));
+        assertTrue(l.isExcluded("com.google.android.inputmethod.latin"));
+        assertFalse(l.isExcluded("org.exemplo.jornal"));
+    }
+
+    @Test
+    public void sessionFromYesterday_countsFromStartOfDay() {
+        ScreenTimeLedger l = ledger();
+        l.onForeground("org.exemplo.jornal", MAIN, DAY - 30 * MIN);
+        l.onBackground("org.exemplo.jornal", MAIN, DAY + 2 * MIN);
+        assertEquals(2 * MIN, l.total(DAY + 3 * MIN));
+    }
+
+    @Test
+    public void repeatedEvents_areNotDoubleCounted() {
+        ScreenTimeLedger l = ledger();
+        l.onForeground("org.exemplo.jornal", MAIN, DAY);
+        l.onForeground("org.exemplo.jornal", MAIN, DAY + MIN);
+        l.onBackground("org.exemplo.jornal", MAIN, DAY + 5 * MIN);
+        l.onBackground("org.exemplo.jornal", MAIN, DAY + 5 * MIN);
+        assertEquals(5 * MIN, l.total(DAY + 10 * MIN));
+    }
+
+    @Test
+    public void stopOfPreviousActivity_doesNotCloseTheNextOne() {
+        ScreenTimeLedger l = ledger();
+        l.onForeground("org.exemplo.jornal", "ListaActivity", DAY);
+        l.onForeground("org.exemplo.jornal", "ArtigoActivity", DAY + MIN);
+        l.onBackground("org.exemplo.jornal", "ListaActivity", DAY + 2 * MIN);   // A1 STOPPED
+        assertEquals(10 * MIN, l.total(DAY + 10 * MIN));
+
+        l.onBackground("org.exemplo.jornal", "ArtigoActivity", DAY + 12 * MIN);
+        assertEquals(12 * MIN, l.total(DAY + 20 * MIN));
+    }
+
+    @Test
+    public void newDay_clearsTotals_andCarriesOpenSessions() {
+        ScreenTimeLedger l = ledger();
+        l.onForeground("org.exemplo.jornal", MAIN, DAY);
+        l.onBackground("org.exemplo.jornal", MAIN, DAY + 5 * MIN);
+        l.onForeground("org.exemplo.musica", MAIN, DAY + 10 * MIN);
+        l.advanceTo(DAY + 10 * MIN);
+
+        l.reset(2 * DAY);
+        assertEquals(DAY + 10 * MIN, l.processedUntil());   // continua onde parou
+        assertEquals(3 * MIN, l.total(2 * DAY + 3 * MIN));  // só a música, desde a meia-noite
+    }
+}